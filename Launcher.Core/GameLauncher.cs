@@ -58,6 +58,11 @@ namespace Launcher.Core
             {
                 throw new LaunchException("Internal error", ex);
             }
+            finally
+            {
+                // the game runs on its own, the Java tools aren't needed anymore
+                JavaHelper.StopAll();
+            }
         }
 
         private static async Task PrepareThenLaunchAsync(IPageControl pageControl, Settings settings, LoginData loginData, bool offline)
@@ -250,7 +255,10 @@ namespace Launcher.Core
             Directory.CreateDirectory(gamePaths.GameDir);
 
             var vmArgs = FillArgsWithValues(gamePaths, loginData, versionFile, assetInfo, Launcher.GameConfig.LaunchArguments.VMArgs);
-            if (settings.JREArguments.Length > 0) vmArgs += " " + settings.JREArguments;
+            // arguments the player didn't change are replaced with the ones recommended for their machine
+            string jreArguments = settings.JREArguments;
+            if (jreArguments == VMDefaults && !string.IsNullOrEmpty(javaInfo.RecommendedVMArguments)) jreArguments = javaInfo.RecommendedVMArguments;
+            if (jreArguments.Length > 0) vmArgs += " " + jreArguments;
 
             var mainClass = Launcher.GameConfig.LaunchArguments.MainClass;
 
@@ -258,16 +266,22 @@ namespace Launcher.Core
 
             try
             {
-                string Encode(string input) => Convert.ToBase64String(Encoding.UTF8.GetBytes(input)); //so that it's sent as a single argument
+                // Everything is sent to the console through its stdin as a launch-spec so that the command line stays short.
+                // In values "\n" and "\r" stand for line breaks and "\\" for a backslash.
+                var spec = new StringBuilder();
+                void Put(string key, string value) => spec.Append(key).Append('=').Append(value.Replace("\\", "\\\\").Replace("\n", "\\n").Replace("\r", "\\r")).Append('\n');
+
+                Put("name", Launcher.GameConfig.Name);
+                Put("java", javaInfo.JavaBinary);
+                Put("lock", Launcher.GameConfig.LockFile ?? "");
+                Put("closeOnExit", settings.CloseOnExit ? "true" : "false");
+                foreach (var arg in SplitArguments($"{vmArgs} {mainClass} {gameArgs}"))
+                    Put("arg", arg);
 
                 string arguments = "";
                 arguments += $" -cp \"{gamePaths.JavaLauncherLibrary}\"";
-                arguments += $" -Dobsidiancore.launcher.name={Encode(Launcher.GameConfig.Name)}";
-                arguments += $" -Dobsidiancore.launcher.java={Encode(javaInfo.JavaBinary)}";
-                arguments += $" -Dobsidiancore.launcher.lock={Encode(Launcher.GameConfig.LockFile ?? "\"\"")}";
-                arguments += " -Dobsidiancore.launcher.closeOnExit=" + (settings.CloseOnExit ? "true" : "false");
+                arguments += " -Dobsidiancore.launcher.spec=stdin";
                 arguments += $" obsidiancore.launcher.console.Console";
-                arguments += $" {vmArgs} {mainClass} {gameArgs}";
 
                 var procInfo = new ProcessStartInfo
                 {
@@ -275,12 +289,17 @@ namespace Launcher.Core
                     UseShellExecute = false,
                     FileName = javaInfo.JavaBinary,
                     Arguments = arguments,
-                    WorkingDirectory = gamePaths.GameDir
+                    WorkingDirectory = gamePaths.GameDir,
+                    RedirectStandardInput = true
                 };
 
                 LockFile.Unlock();
 
-                Process.Start(procInfo).Dispose();
+                using (Process proc = Process.Start(procInfo))
+                using (var writer = new StreamWriter(proc.StandardInput.BaseStream, new UTF8Encoding(false)))
+                {
+                    writer.Write(spec.ToString());
+                }
             }
             catch (Win32Exception)
             {
@@ -288,6 +307,61 @@ namespace Launcher.Core
             }
         }
 
+        // Splits a command line the same way the C runtime on Windows (and .NET on other platforms) does.
+        private static List<string> SplitArguments(string commandLine)
+        {
+            var args = new List<string>();
+            var current = new StringBuilder();
+            bool inQuotes = false, hasArg = false;
+
+            for (int i = 0; i < commandLine.Length; i++)
+            {
+                char c = commandLine[i];
+                if (c == '\\')
+                {
+                    int backslashes = 0;
+                    while (i < commandLine.Length && commandLine[i] == '\\')
+                    {
+                        backslashes++;
+                        i++;
+                    }
+
+                    if (i < commandLine.Length && commandLine[i] == '"')
+                    {
+                        // 2n backslashes + quote are n backslashes and a quote toggle, 2n+1 are n backslashes and a literal quote
+                        current.Append('\\', backslashes / 2);
+                        if (backslashes % 2 == 1) current.Append('"');
+                        else inQuotes = !inQuotes;
+                    }
+                    else
+                    {
+                        current.Append('\\', backslashes);
+                        i--;
+                    }
+                    hasArg = true;
+                }
+                else if (c == '"')
+                {
+                    inQuotes = !inQuotes;
+                    hasArg = true;
+                }
+                else if (char.IsWhiteSpace(c) && !inQuotes)
+                {
+                    if (hasArg) args.Add(current.ToString());
+                    current.Clear();
+                    hasArg = false;
+                }
+                else
+                {
+                    current.Append(c);
+                    hasArg = true;
+                }
+            }
+            if (hasArg) args.Add(current.ToString());
+
+            return args;
+        }
+
         private static string FillArgsWithValues(GamePaths gamePaths, LoginData loginData, VersionFile versionFile, Assets.AssetInfo assetInfo, string args)
         {
             StringBuilder argsBuilder = new StringBuilder();
@@ -2,6 +2,7 @@
 using System.Collections.Generic;
 using System.ComponentModel;
 using System.Diagnostics;
+using System.IO;
 using System.Linq;
 using System.Text.RegularExpressions;
 
@@ -11,7 +12,13 @@ namespace Launcher.Core
     {
         internal static Info? GetInfo(GamePaths gamePaths, string javaBinary)
         {
-            var dict = GetProperties(gamePaths, javaBinary, new[] { "java.version", "os.version", "os.arch" });
+            // the fingerprint of every binary is cached (see obsidiancore.launcher.util.Fingerprint),
+            // a JVM is only started the first time and after the binary changed.
+            // The entry is found by the real path of the binary, so a changed PATH or link doesn't find the one of another JVM
+            string realBinary = ResolveBinary(javaBinary);
+            string cacheFile = Path.Combine(gamePaths.DataDir, "java-cache", Hash.CalculateSha1ForString(realBinary) + ".properties");
+            string modpackSize = GetModpackSize(gamePaths);
+            var dict = ReadCache(cacheFile, javaBinary, realBinary, modpackSize) ?? GetProperties(gamePaths, javaBinary, cacheFile, modpackSize, new[] { "java.version", "os.version", "os.arch" });
             try
             {
                 return new Info
@@ -20,7 +27,16 @@ namespace Launcher.Core
                     JavaVersion = dict["java.version"],
                     DescriptiveJavaVersion = GetDescriptiveVersion(dict["java.version"]),
                     OSVersion = dict["os.version"],
-                    Is64Bit = dict["os.arch"].Contains("64")
+                    Is64Bit = dict["os.arch"].Contains("64"),
+                    JavaHome = GetValue(dict, "java.home"),
+                    JavaVendor = GetValue(dict, "java.vendor"),
+                    VMName = GetValue(dict, "java.vm.name"),
+                    AvailableProcessors = (int)GetNumber(dict, "fingerprint.processors"),
+                    MaxHeap = GetNumber(dict, "fingerprint.maxHeap"),
+                    PhysicalMemory = GetNumber(dict, "fingerprint.physicalMemory"),
+                    JITCompiler = GetValue(dict, "fingerprint.jit"),
+                    ClassDataSharing = GetValue(dict, "fingerprint.cds") == "true",
+                    RecommendedVMArguments = GetValue(dict, "recommend.flags")
                 };
             }
             catch (Exception)
@@ -29,6 +45,62 @@ namespace Launcher.Core
             }
         }
 
+        // the real path of the binary that is started for javaBinary: a bare name is looked up in PATH and links are resolved
+        private static string ResolveBinary(string javaBinary)
+        {
+            string path = javaBinary;
+            try
+            {
+                if (path.IndexOfAny(new[] { Path.DirectorySeparatorChar, Path.AltDirectorySeparatorChar }) < 0)
+                    path = FindInPath(path) ?? path;
+            }
+            catch (ArgumentException)
+            {
+                // an invalid directory in PATH
+            }
+            return Platform.GetRealPath(path);
+        }
+
+        private static string FindInPath(string name)
+        {
+            string[] extensions = { "" };
+            if (Platform.OperatingSystem == Platform.OS.Windows && !Path.HasExtension(name))
+                extensions = (Environment.GetEnvironmentVariable("PATHEXT") ?? ".EXE").Split(';');
+
+            foreach (string dir in (Environment.GetEnvironmentVariable("PATH") ?? "").Split(Path.PathSeparator))
+            {
+                if (dir.Length == 0) continue;
+                foreach (string extension in extensions)
+                {
+                    string candidate = Path.Combine(dir.Trim('"'), name + extension);
+                    if (File.Exists(candidate)) return candidate;
+                }
+            }
+            return null;
+        }
+
+        // a hint for the recommended heap size (see obsidiancore.launcher.util.Recommendation), by the mods the game had the last time
+        private static string GetModpackSize(GamePaths gamePaths)
+        {
+            string modsDir = Path.Combine(gamePaths.GameDir, "mods");
+            int mods = Directory.Exists(modsDir) ? Directory.GetFiles(modsDir, "*.jar").Length : 0;
+            if (mods == 0) return "vanilla";
+            if (mods < 40) return "small";
+            if (mods < 120) return "medium";
+            return "large";
+        }
+
+        private static string GetValue(Dictionary<string, string> dict, string key)
+        {
+            return dict.TryGetValue(key, out string value) ? value : "";
+        }
+
+        // 0 if unknown
+        private static long GetNumber(Dictionary<string, string> dict, string key)
+        {
+            return long.TryParse(GetValue(dict, key), out long value) ? value : 0;
+        }
+
         private static int GetDescriptiveVersion(string version)
         {
             var match = Regex.Match(version, @"^(\d+)\.(\d+)");
@@ -50,11 +122,43 @@ namespace Launcher.Core
             }
         }
 
-        private static Dictionary<string, string> GetProperties(GamePaths gamePaths, string jvm_bin, string[] keys)
+        // the cached fingerprint or null if there is none, it's of another binary or the binary changed since it was written
+        private static Dictionary<string, string> ReadCache(string cacheFile, string javaBinary, string realBinary, string modpackSize)
+        {
+            try
+            {
+                if (!File.Exists(cacheFile)) return null;
+                var dict = ParseProperties(File.ReadAllText(cacheFile));
+
+                var binary = new FileInfo(dict["binary.path"]);
+                if (dict["binary"] != javaBinary || dict["recommend.modpack"] != modpackSize || !binary.Exists) return null;
+                if (!IsSameJava(realBinary, binary)) return null;
+                if (binary.Length != long.Parse(dict["binary.size"])) return null;
+                if (new DateTimeOffset(binary.LastWriteTimeUtc).ToUnixTimeSeconds() != long.Parse(dict["binary.mtime"])) return null;
+                return dict;
+            }
+            catch (Exception)
+            {
+                return null;
+            }
+        }
+
+        // binary.path is always java in java.home, the launcher may start javaw next to it
+        // or the bin/java of a JDK 8, whose java.home is its jre directory
+        private static bool IsSameJava(string realBinary, FileInfo binary)
+        {
+            var comparison = Platform.OperatingSystem == Platform.OS.Windows ? StringComparison.OrdinalIgnoreCase : StringComparison.Ordinal;
+            string dir = Path.GetDirectoryName(realBinary);
+            if (string.Equals(dir, binary.DirectoryName, comparison)) return true;
+            var javaHome = binary.Directory.Parent;
+            return javaHome != null && javaHome.Parent != null && string.Equals(javaHome.Name, "jre", comparison)
+                && string.Equals(dir, Path.Combine(javaHome.Parent.FullName, "bin"), comparison);
+        }
+
+        private static Dictionary<string, string> GetProperties(GamePaths gamePaths, string jvm_bin, string cacheFile, string modpackSize, string[] keys)
         {
             string args = keys.Aggregate((left, right) => $"{left} {right}");
 
-            var dict = new Dictionary<string, string>();
             try
             {
                 string lines;
@@ -64,7 +168,7 @@ namespace Launcher.Core
                     UseShellExecute = false,
                     CreateNoWindow = true,
                     FileName = jvm_bin,
-                    Arguments = $"-cp \"{gamePaths.JavaLauncherLibrary}\" obsidiancore.launcher.util.GetProperties " + args,
+                    Arguments = $"-cp \"{gamePaths.JavaLauncherLibrary}\" obsidiancore.launcher.util.GetProperties --cache \"{cacheFile}\" \"{jvm_bin}\" --modpack {modpackSize} " + args,
                     WorkingDirectory = Launcher.BaseDir,
                     RedirectStandardOutput = true,
                     RedirectStandardError = true
@@ -74,14 +178,7 @@ namespace Launcher.Core
                     lines = proc.StandardOutput.ReadToEnd();
                 }
 
-                var match = Regex.Match(lines, @"^(.*?)=(.*)$", RegexOptions.Multiline);
-                while (match.Success)
-                {
-                    dict[match.Groups[1].Value] = match.Groups[2].Value;
-                    match = match.NextMatch();
-                }
-
-                return dict;
+                return ParseProperties(lines);
             }
             catch (Win32Exception)
             {
@@ -89,6 +186,18 @@ namespace Launcher.Core
             }
         }
 
+        private static Dictionary<string, string> ParseProperties(string lines)
+        {
+            var dict = new Dictionary<string, string>();
+            var match = Regex.Match(lines, @"^(.*?)=(.*?)\r?$", RegexOptions.Multiline);
+            while (match.Success)
+            {
+                dict[match.Groups[1].Value] = match.Groups[2].Value;
+                match = match.NextMatch();
+            }
+            return dict;
+        }
+
         internal struct Info
         {
             internal string JavaBinary { get; set; }
@@ -97,6 +206,16 @@ namespace Launcher.Core
             internal int DescriptiveJavaVersion { get; set; }
             internal string OSVersion { get; set; }
             internal bool Is64Bit { get; set; }
+
+            internal string JavaHome { get; set; }
+            internal string JavaVendor { get; set; }
+            internal string VMName { get; set; }
+            internal int AvailableProcessors { get; set; } // 0 if unknown
+            internal long MaxHeap { get; set; } // the default maximum heap in bytes, 0 if unknown
+            internal long PhysicalMemory { get; set; } // in bytes, 0 if unknown
+            internal string JITCompiler { get; set; } // empty if there is none
+            internal bool ClassDataSharing { get; set; }
+            internal string RecommendedVMArguments { get; set; } // heap, GC and GC threads for this JVM, machine and modpack
         }
     }
 }
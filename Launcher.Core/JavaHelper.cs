@@ -0,0 +1,165 @@
+﻿using System;
+using System.Collections.Generic;
+using System.Diagnostics;
+using System.IO;
+using System.Text;
+using System.Threading;
+using System.Threading.Tasks;
+
+namespace Launcher.Core
+{
+    // One Java process that runs the Java tools for the whole launch (see obsidiancore.launcher.helper.Helper),
+    // so the tools don't pay for the start of a JVM and the loading of their classes every time.
+    // There is one helper for every Java binary, it's started the first time it's needed and stopped by StopAll().
+    internal class JavaHelper : IDisposable
+    {
+        private static readonly Dictionary<string, JavaHelper> helpers = new Dictionary<string, JavaHelper>();
+
+        private readonly Process process;
+        private readonly Stream input, output;
+        private readonly Dictionary<string, TaskCompletionSource<Result>> pending = new Dictionary<string, TaskCompletionSource<Result>>();
+        private int nextId;
+        private bool exited;
+
+        internal static JavaHelper For(GamePaths gamePaths, Java.Info javaInfo)
+        {
+            lock (helpers)
+            {
+                if (!helpers.TryGetValue(javaInfo.JavaBinary, out var helper))
+                {
+                    helper = new JavaHelper(gamePaths, javaInfo);
+                    helpers[javaInfo.JavaBinary] = helper;
+                }
+                return helper;
+            }
+        }
+
+        internal static void StopAll()
+        {
+            lock (helpers)
+            {
+                foreach (var helper in helpers.Values)
+                    helper.Dispose();
+                helpers.Clear();
+            }
+        }
+
+        private JavaHelper(GamePaths gamePaths, Java.Info javaInfo)
+        {
+            process = Process.Start(new ProcessStartInfo
+            {
+                UseShellExecute = false,
+                CreateNoWindow = true,
+                FileName = javaInfo.JavaBinary,
+                Arguments = $"-Dobsidiancore.launcher.bcp.cache=\"{Path.Combine(gamePaths.DataDir, "patch-cache")}\" -cp commons-lang3-3.12.0.jar{Path.PathSeparator}bcel-6.6.0.jar{Path.PathSeparator}\"{gamePaths.JavaLauncherLibrary}\" obsidiancore.launcher.helper.Helper",
+                RedirectStandardInput = true,
+                RedirectStandardOutput = true
+            });
+            input = process.StandardInput.BaseStream;
+            output = process.StandardOutput.BaseStream;
+            new Thread(ReadAnswers) { IsBackground = true, Name = "Java helper" }.Start();
+        }
+
+        // Runs a tool with the arguments of its main method ("properties", "patch" or "verify"), stdin is what it reads for "-".
+        // Can be called from more than one thread, the requests run at the same time.
+        internal Result Run(string command, string[] args, string stdin = "")
+        {
+            var answer = new TaskCompletionSource<Result>(TaskCreationOptions.RunContinuationsAsynchronously);
+            byte[] stdinBytes = Encoding.UTF8.GetBytes(stdin);
+            lock (input)
+            {
+                string id = (nextId++).ToString();
+                lock (pending)
+                {
+                    if (exited) throw new IOException("The Java helper has exited.");
+                    pending[id] = answer;
+                }
+
+                var request = new StringBuilder();
+                request.Append(id).Append(' ').Append(command).Append(' ').Append(args.Length).Append(' ').Append(stdinBytes.Length).Append('\n');
+                foreach (var arg in args)
+                    request.Append(arg).Append('\n');
+                byte[] requestBytes = Encoding.UTF8.GetBytes(request.ToString());
+                input.Write(requestBytes, 0, requestBytes.Length);
+                input.Write(stdinBytes, 0, stdinBytes.Length);
+                input.Flush();
+            }
+            return answer.Task.GetAwaiter().GetResult();
+        }
+
+        private void ReadAnswers()
+        {
+            try
+            {
+                string header;
+                while ((header = ReadLine()) != null)
+                {
+                    // "<id> <exit code> <output length>"
+                    string[] parts = header.Split(' ');
+                    var body = new byte[int.Parse(parts[2])];
+                    ReadFully(body);
+
+                    TaskCompletionSource<Result> answer;
+                    lock (pending)
+                    {
+                        if (!pending.TryGetValue(parts[0], out answer)) continue;
+                        pending.Remove(parts[0]);
+                    }
+                    answer.TrySetResult(new Result { ExitCode = int.Parse(parts[1]), Output = Encoding.UTF8.GetString(body) });
+                }
+            }
+            catch (Exception) { }
+
+            lock (pending)
+            {
+                exited = true;
+                foreach (var answer in pending.Values)
+                    answer.TrySetException(new IOException("The Java helper has exited."));
+                pending.Clear();
+            }
+        }
+
+        private string ReadLine()
+        {
+            var line = new MemoryStream();
+            int b;
+            while ((b = output.ReadByte()) != '\n')
+            {
+                if (b < 0) return null;
+                line.WriteByte((byte)b);
+            }
+            return Encoding.UTF8.GetString(line.ToArray());
+        }
+
+        private void ReadFully(byte[] buffer)
+        {
+            int pos = 0;
+            while (pos < buffer.Length)
+            {
+                int read = output.Read(buffer, pos, buffer.Length - pos);
+                if (read <= 0) throw new EndOfStreamException();
+                pos += read;
+            }
+        }
+
+        // the end of stdin makes the helper finish the running requests and exit
+        public void Dispose()
+        {
+            try
+            {
+                lock (input)
+                    input.Close();
+                if (!process.WaitForExit(10000))
+                    process.Kill();
+            }
+            catch (Exception) { }
+            process.Dispose();
+        }
+
+        internal struct Result
+        {
+            internal int ExitCode { get; set; }
+            internal string Output { get; set; } // UTF-8 text, what the tool prints on stdout
+        }
+    }
+}
@@ -124,7 +124,7 @@ namespace Launcher.Core.Mods
                     }
 
                     // patch the bytecode if patching is required
-                    ByteCodePatcher.PatchIfRequired(gamePaths, javaInfo, forgeVersion, forgeVersionId, forgeVersionFilePath);
+                    ByteCodePatcher.PatchIfRequired(gamePaths, javaInfo);
 
                     // update profiles
 
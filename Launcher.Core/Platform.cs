@@ -1,4 +1,8 @@
-﻿using System.Runtime.InteropServices;
+﻿using System;
+using System.IO;
+using System.Runtime.InteropServices;
+using System.Text;
+using Microsoft.Win32.SafeHandles;
 using ints = System.Runtime.InteropServices;
 
 namespace Launcher.Core
@@ -48,6 +52,62 @@ namespace Launcher.Core
             }
         }
 
+        // the absolute path with all links resolved, the path itself if it can't be resolved
+        internal static string GetRealPath(string path)
+        {
+            try
+            {
+                path = Path.GetFullPath(path);
+                return OperatingSystem == OS.Windows ? GetFinalPathName(path) : GetRealPathUnix(path);
+            }
+            catch (Exception)
+            {
+                return path;
+            }
+        }
+
+        private static string GetRealPathUnix(string path)
+        {
+            IntPtr resolved = realpath(path, IntPtr.Zero);
+            if (resolved == IntPtr.Zero) return path;
+            try
+            {
+                return Marshal.PtrToStringAnsi(resolved);
+            }
+            finally
+            {
+                free(resolved);
+            }
+        }
+
+        private static string GetFinalPathName(string path)
+        {
+            const uint FILE_FLAG_BACKUP_SEMANTICS = 0x02000000; // needed to open directories too
+            using (SafeFileHandle handle = CreateFile(path, 0, FileShare.ReadWrite | FileShare.Delete, IntPtr.Zero, FileMode.Open, FILE_FLAG_BACKUP_SEMANTICS, IntPtr.Zero))
+            {
+                if (handle.IsInvalid) return path;
+                var sb = new StringBuilder(1024);
+                uint length = GetFinalPathNameByHandle(handle, sb, (uint)sb.Capacity, 0);
+                if (length == 0 || length >= sb.Capacity) return path;
+                string result = sb.ToString();
+                if (result.StartsWith(@"\\?\UNC\")) return @"\\" + result.Substring(8);
+                if (result.StartsWith(@"\\?\")) return result.Substring(4);
+                return result;
+            }
+        }
+
+        [DllImport("libc", SetLastError = true)]
+        private static extern IntPtr realpath(string path, IntPtr resolvedPath);
+
+        [DllImport("libc")]
+        private static extern void free(IntPtr ptr);
+
+        [DllImport("kernel32.dll", CharSet = CharSet.Unicode, SetLastError = true)]
+        private static extern SafeFileHandle CreateFile(string fileName, uint access, FileShare share, IntPtr securityAttributes, FileMode creationDisposition, uint flags, IntPtr templateFile);
+
+        [DllImport("kernel32.dll", CharSet = CharSet.Unicode, SetLastError = true)]
+        private static extern uint GetFinalPathNameByHandle(SafeFileHandle file, StringBuilder path, uint size, uint flags);
+
         internal enum OS
         {
             Unknown,
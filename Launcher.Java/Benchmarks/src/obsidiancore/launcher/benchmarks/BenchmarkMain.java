@@ -0,0 +1,21 @@
+package obsidiancore.launcher.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs all the benchmarks with the GC profiler (allocation per operation).
+// The usual JMH command line options work, e.g. "ClassBenchmark -p targetMethods=500 -rf json".
+// Not part of Launcher.Java.jar.
+
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        if (cmdOptions.getIncludes().isEmpty()) builder.include(BenchmarkMain.class.getPackage().getName() + ".");
+        builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package obsidiancore.launcher.benchmarks;
+
+import obsidiancore.launcher.bcp.CoreModManager_Sort_Patch;
+import obsidiancore.launcher.bcp.Fragment;
+import obsidiancore.launcher.bcp.FragmentCompiler;
+import obsidiancore.launcher.bcp.SecureJarHandler_ManifestEntryVerifier_Patch;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+// The stages of patching one class: parse, rebuild, the lookup of the code that is copied in, transform and dump.
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassBenchmark {
+    //extra methods in the target class, controls its size
+    @Param({"10", "500"})
+    public int targetMethods;
+
+    private byte[] coreModManager;
+    private byte[] secureJarHandler;
+    private byte[] sortFragment;
+    private byte[] collectionsClass;
+    private JavaClass parsed;
+    private JavaClass patched;
+
+    private final CoreModManager_Sort_Patch sortPatch = new CoreModManager_Sort_Patch();
+    private final SecureJarHandler_ManifestEntryVerifier_Patch sunPatch = new SecureJarHandler_ManifestEntryVerifier_Patch();
+
+    @Setup
+    public void setup() throws Exception {
+        coreModManager = SyntheticJar.createCoreModManager(targetMethods);
+        secureJarHandler = SyntheticJar.createSecureJarHandler(targetMethods);
+        parsed = parse(coreModManager);
+        try (InputStream is = Fragment.class.getResourceAsStream("fragments/Collections.sort.fragment")) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = is.read(buf)) > 0; ) baos.write(buf, 0, n);
+            sortFragment = baos.toByteArray();
+        }
+        try (InputStream is = Fragment.class.getResourceAsStream("Collections.class")) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = is.read(buf)) > 0; ) baos.write(buf, 0, n);
+            collectionsClass = baos.toByteArray();
+        }
+
+        ClassGen classGen = new ClassGen(parsed);
+        sortPatch.transform(classGen);
+        patched = classGen.getJavaClass();
+    }
+
+    private static JavaClass parse(byte[] data) throws IOException {
+        return new ClassParser(new ByteArrayInputStream(data), "Target.class").parse();
+    }
+
+    @Benchmark
+    public JavaClass parse() throws IOException {
+        return parse(coreModManager);
+    }
+
+    @Benchmark
+    public ClassGen classGen() {
+        return new ClassGen(parsed);
+    }
+
+    //what loading the sort method costs the first time in a JVM, the fragment is kept after that
+    @Benchmark
+    public Fragment readSortFragment() throws IOException {
+        return Fragment.read(new ByteArrayInputStream(sortFragment));
+    }
+
+    //the same when the stored fragment is outdated and it's compiled from the class instead
+    @Benchmark
+    public Fragment compileSortFragment() throws IOException {
+        return FragmentCompiler.compile("obsidiancore/launcher/bcp/Collections", "sort", collectionsClass);
+    }
+
+    @Benchmark
+    public ClassGen transformSort() throws Exception {
+        ClassGen classGen = new ClassGen(parsed);
+        sortPatch.transform(classGen);
+        return classGen;
+    }
+
+    @Benchmark
+    public byte[] dump() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(coreModManager.length + 1024);
+        patched.dump(baos);
+        return baos.toByteArray();
+    }
+
+    //parse, transform and dump together, like the engine and the agent do it
+    @Benchmark
+    public byte[] patchSun() throws Exception {
+        ClassGen classGen = new ClassGen(parse(secureJarHandler));
+        sunPatch.transform(classGen);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(secureJarHandler.length + 1024);
+        classGen.getJavaClass().dump(baos);
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,102 @@
+package obsidiancore.launcher.benchmarks;
+
+import obsidiancore.launcher.bcp.BatchPatcher;
+import obsidiancore.launcher.bcp.CoreModManager_Sort_Patch;
+import obsidiancore.launcher.bcp.JarRewriter;
+import obsidiancore.launcher.bcp.Patch;
+import obsidiancore.launcher.bcp.PatchEngine;
+import obsidiancore.launcher.bcp.ReverseDelta;
+import obsidiancore.launcher.bcp.RewriteStats;
+import obsidiancore.launcher.bcp.ZipDirectory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Reading the jar and rewriting it, and a whole patcher job for one jar.
+// Every invocation that writes gets a fresh copy of the unpatched jar.
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JarBenchmark {
+    @State(Scope.Benchmark)
+    public static class SourceJar {
+        @Param({"1000", "5000"})
+        public int entries;
+
+        @Param({"10", "500"})
+        public int targetMethods;
+
+        File dir;
+        File original;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException {
+            dir = Files.createTempDirectory("bcp-benchmark").toFile();
+            original = new File(dir, "forge-original.jar");
+            SyntheticJar.write(original, entries, targetMethods);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WorkCopy {
+        File jar;
+
+        @Setup(Level.Invocation)
+        public void copy(SourceJar source) throws IOException {
+            jar = new File(source.dir, "forge.jar");
+            ReverseDelta.getFile(jar).delete();
+            new File(jar.getPath() + ".bcp").delete();
+            Files.copy(source.original.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static final PrintStream NO_OUTPUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+    });
+
+    @Benchmark
+    public ZipDirectory readDirectory(SourceJar source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source.original.toPath(), StandardOpenOption.READ)) {
+            return ZipDirectory.read(channel);
+        }
+    }
+
+    @Benchmark
+    public RewriteStats rewrite(WorkCopy work) throws Exception {
+        List<Patch> patches = Collections.<Patch>singletonList(new CoreModManager_Sort_Patch());
+        try (JarRewriter jar = new JarRewriter(work.jar)) {
+            PatchEngine.apply(jar, patches);
+            return jar.commit(ReverseDelta.getFile(work.jar));
+        }
+    }
+
+    //the whole job as the launcher runs it, without the cache
+    @Benchmark
+    public boolean endToEnd(WorkCopy work) {
+        return BatchPatcher.run(Collections.singletonList(new BatchPatcher.Job("CoreModManager_Sort_Patch", work.jar.getPath())), NO_OUTPUT);
+    }
+}
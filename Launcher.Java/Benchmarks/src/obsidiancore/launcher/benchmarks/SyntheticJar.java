@@ -0,0 +1,130 @@
+package obsidiancore.launcher.benchmarks;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Generates jars that look like the Forge and ModLauncher jars to the patches:
+// signed (META-INF with a manifest and a signature file), lots of ordinary classes,
+// and the target classes with a chosen number of extra methods to control their size.
+
+public class SyntheticJar {
+    public static final String CORE_MOD_MANAGER = "cpw.mods.fml.relauncher.CoreModManager";
+    public static final String SECURE_JAR_HANDLER = "cpw.mods.modlauncher.SecureJarHandler";
+
+    private SyntheticJar() {
+    }
+
+    public static void write(File file, int entries, int targetMethods) throws IOException {
+        Random random = new Random(entries);
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+            put(zos, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+            put(zos, "META-INF/FORGE.SF", "Signature-Version: 1.0\r\n\r\n".getBytes("UTF-8"));
+            put(zos, "META-INF/FORGE.DSA", new byte[1500]);
+
+            for (int i = 0; i < entries; i++) {
+                put(zos, "net/minecraftforge/synthetic/C" + i + ".class", createFillerClass("net.minecraftforge.synthetic.C" + i, 4 + random.nextInt(12)));
+            }
+
+            put(zos, CORE_MOD_MANAGER.replace('.', '/') + ".class", createCoreModManager(targetMethods));
+            put(zos, SECURE_JAR_HANDLER.replace('.', '/') + ".class", createSecureJarHandler(targetMethods));
+        }
+    }
+
+    private static void put(ZipOutputStream zos, String name, byte[] data) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    public static byte[] createFillerClass(String className, int methods) {
+        ClassGen cg = new ClassGen(className, "java.lang.Object", null, Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        cg.addEmptyConstructor(Const.ACC_PUBLIC);
+        addMethods(cg, "m", methods);
+        return dump(cg);
+    }
+
+    //sortTweakList calls java.util.Collections.sort like the FML versions that need CoreModManager_Sort_Patch
+    public static byte[] createCoreModManager(int extraMethods) {
+        ClassGen cg = new ClassGen(CORE_MOD_MANAGER, "java.lang.Object", null, Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        ConstantPoolGen cp = cg.getConstantPool();
+        InstructionFactory f = new InstructionFactory(cg);
+        cg.addEmptyConstructor(Const.ACC_PUBLIC);
+
+        Type list = new ObjectType("java.util.List");
+        Type comparator = new ObjectType("java.util.Comparator");
+        InstructionList il = new InstructionList();
+        il.append(InstructionFactory.createLoad(list, 0));
+        il.append(InstructionFactory.createLoad(comparator, 1));
+        il.append(f.createInvoke("java.util.Collections", "sort", Type.VOID, new Type[]{list, comparator}, Const.INVOKESTATIC));
+        il.append(InstructionConst.RETURN);
+        MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.VOID, new Type[]{list, comparator},
+                new String[]{"list", "comparator"}, "sortTweakList", CORE_MOD_MANAGER, il, cp);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        cg.addMethod(mg.getMethod());
+        il.dispose();
+
+        addMethods(cg, "handleLaunch", extraMethods);
+        return dump(cg);
+    }
+
+    //<clinit> sets the JV field like the ModLauncher versions that need SecureJarHandler_ManifestEntryVerifier_Patch
+    public static byte[] createSecureJarHandler(int extraMethods) {
+        ClassGen cg = new ClassGen(SECURE_JAR_HANDLER, "java.lang.Object", null, Const.ACC_PUBLIC | Const.ACC_SUPER, null);
+        ConstantPoolGen cp = cg.getConstantPool();
+        InstructionFactory f = new InstructionFactory(cg);
+        cg.addEmptyConstructor(Const.ACC_PUBLIC);
+
+        Type field = new ObjectType("java.lang.reflect.Field");
+        cg.addField(new FieldGen(Const.ACC_PRIVATE | Const.ACC_STATIC, field, "JV", cp).getField());
+
+        InstructionList il = new InstructionList();
+        il.append(new PUSH(cp, "java.util.jar.JarVerifier"));
+        il.append(InstructionConst.POP);
+        il.append(InstructionConst.ACONST_NULL);
+        il.append(f.createPutStatic(SECURE_JAR_HANDLER, "JV", field));
+        il.append(InstructionConst.RETURN);
+        MethodGen mg = new MethodGen(Const.ACC_STATIC, Type.VOID, Type.NO_ARGS, null, "<clinit>", SECURE_JAR_HANDLER, il, cp);
+        mg.setMaxStack();
+        cg.addMethod(mg.getMethod());
+        il.dispose();
+
+        addMethods(cg, "verify", extraMethods);
+        return dump(cg);
+    }
+
+    private static void addMethods(ClassGen cg, String prefix, int count) {
+        ConstantPoolGen cp = cg.getConstantPool();
+        InstructionFactory f = new InstructionFactory(cg);
+        for (int i = 0; i < count; i++) {
+            InstructionList il = new InstructionList();
+            il.append(new PUSH(cp, cg.getClassName() + "." + prefix + i));
+            il.append(f.createInvoke("java.lang.String", "length", Type.INT, Type.NO_ARGS, Const.INVOKEVIRTUAL));
+            il.append(new PUSH(cp, i));
+            il.append(InstructionConst.IADD);
+            il.append(InstructionConst.IRETURN);
+            MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.INT, Type.NO_ARGS, null, prefix + i, cg.getClassName(), il, cp);
+            mg.setMaxStack();
+            cg.addMethod(mg.getMethod());
+            il.dispose();
+        }
+    }
+
+    private static byte[] dump(ClassGen cg) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            cg.getJavaClass().dump(baos);
+        } catch (IOException e) {
+            throw new RuntimeException(e); //can't happen with a byte array
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,26 @@
+package obsidiancore.launcher.bcp;
+
+import org.apache.bcel.generic.ClassGen;
+
+public abstract class AbstractPatch implements Patch {
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public String[] getTargetMethods() {
+        return new String[0];
+    }
+
+    @Override
+    public void beforeClasses(JarRewriter jar) throws Exception {
+    }
+
+    @Override
+    public abstract void transform(ClassGen classGen) throws Exception;
+
+    @Override
+    public void afterClasses(JarRewriter jar) throws Exception {
+    }
+}
@@ -0,0 +1,271 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Applies a list of patches in one JVM.
+// The job list is UTF-8 text with one "<patch> <jar>" line per job, empty lines and lines starting with # are ignored.
+// Jobs for different jars run in parallel, all the patches for the same jar are written in one rewrite.
+// For every job a line "<status>\t<patch>\t<jar>\t<ms>\t<message>" is printed in the order of the job list,
+// the status is one of patched, already-patched or failed.
+// With the patch cache enabled (see PatchCache) a jar that was patched before is taken from the cache.
+// Every patched jar gets a ReverseDelta next to it, Unpatcher uses it to restore the original.
+
+public class BatchPatcher {
+    public static final String PATCHED = "patched";
+    public static final String ALREADY_PATCHED = "already-patched";
+    public static final String FAILED = "failed";
+
+    private BatchPatcher() {
+    }
+
+    //reads the jobs from the file or from in if the name is "-", returns true if no job failed
+    public static boolean run(String jobFile, InputStream in, PrintStream out) throws IOException {
+        List<Job> jobs;
+        if ("-".equals(jobFile)) {
+            jobs = readJobs(in);
+        } else {
+            try (InputStream is = new FileInputStream(jobFile)) {
+                jobs = readJobs(is);
+            }
+        }
+        return run(jobs, out);
+    }
+
+    public static List<Job> readJobs(InputStream is) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            //the jar path can contain spaces, the patch name can't
+            int sep = 0;
+            while (sep < line.length() && !Character.isWhitespace(line.charAt(sep))) sep++;
+            jobs.add(new Job(line.substring(0, sep), line.substring(sep).trim()));
+        }
+        return jobs;
+    }
+
+    public static boolean run(List<Job> jobs, PrintStream out) {
+        //group the jobs by jar
+        Map<String, List<Job>> byJar = new LinkedHashMap<>();
+        for (Job job : jobs) {
+            String key;
+            try {
+                key = new File(job.jar).getCanonicalPath();
+            } catch (IOException e) {
+                key = new File(job.jar).getAbsolutePath();
+            }
+            List<Job> list = byJar.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                byJar.put(key, list);
+            }
+            list.add(job);
+        }
+
+        final PatchCache cache = PatchCache.createFromProperties();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(byJar.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final Map.Entry<String, List<Job>> e : byJar.entrySet()) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    public Void call() {
+                        patchJar(new File(e.getKey()), e.getValue(), cache);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException | ExecutionException ignore) {
+                    //patchJar records its own errors
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        boolean ok = true;
+        for (Job job : jobs) {
+            if (job.status == null) job.fail("Not run");
+            if (FAILED.equals(job.status)) ok = false;
+            out.println(job);
+        }
+        out.flush();
+        return ok;
+    }
+
+    private static void patchJar(File libFile, List<Job> jobs, PatchCache cache) {
+        long startNanos = System.nanoTime();
+        if (!libFile.isFile()) {
+            for (Job job : jobs) job.fail("File not found");
+            return;
+        }
+
+        List<Patch> patches = new ArrayList<>();
+        Set<String> names = new TreeSet<>();
+        for (Job job : jobs) {
+            try {
+                Patch patch = PatchRegistry.get(job.patch);
+                patches.add(patch);
+                names.add(patch.getName());
+            } catch (PatchException e) {
+                job.fail(e);
+            }
+        }
+
+        try {
+            //the sidecar answers without opening the jar
+            if (PatchCache.isPatched(libFile, names)) {
+                finish(jobs, ALREADY_PATCHED, "", System.nanoTime() - startNanos);
+                return;
+            }
+
+            String sha256 = null, key = null;
+            if (cache != null && !names.isEmpty()) {
+                sha256 = PatchCache.sha256(libFile);
+                key = PatchCache.getKey(sha256, names);
+                ReverseDelta delta = ReverseDelta.readFor(libFile, sha256);
+                File cached = cache.lookup(key, delta != null ? delta.getOriginalSha256() : sha256);
+                if (cached != null && !hasFailed(jobs)) {
+                    PatchCache.install(cached, libFile);
+                    PatchCache.writeSidecar(libFile, names);
+                    finish(jobs, PATCHED, "from the cache", System.nanoTime() - startNanos);
+                    return;
+                }
+            }
+
+            try (JarRewriter jar = new JarRewriter(libFile)) {
+                //all the patches for the jar are applied with one walk over its classes
+                Map<Patch, Exception> results = PatchEngine.apply(jar, patches);
+                long applyNanos = System.nanoTime() - startNanos;
+
+                for (Job job : jobs) {
+                    if (job.status != null) continue;
+                    Exception e = results.get(PatchRegistry.get(job.patch));
+                    if (e == null) {
+                        job.status = PATCHED;
+                    } else if (e instanceof AlreadyPatchedException) {
+                        job.status = ALREADY_PATCHED;
+                        job.message = "";
+                    } else {
+                        job.fail(e);
+                    }
+                    job.nanos = applyNanos;
+                }
+
+                //a failed patch leaves the jar alone, the others for the same jar aren't written either
+                if (hasFailed(jobs)) {
+                    for (Job job : jobs) {
+                        if (PATCHED.equals(job.status)) job.fail("Not written because another patch for this jar failed");
+                    }
+                    return;
+                }
+
+                if (jar.isModified()) {
+                    String stats = jar.commit(ReverseDelta.getFile(libFile), sha256).toString();
+                    for (Job job : jobs) {
+                        if (PATCHED.equals(job.status)) job.message = stats;
+                    }
+                    if (cache != null) cache.store(key, libFile, sha256, names);
+                }
+            }
+            PatchCache.writeSidecar(libFile, names);
+        } catch (Exception e) {
+            for (Job job : jobs) {
+                if (job.status == null || PATCHED.equals(job.status)) job.fail(e);
+            }
+        }
+
+        //the rewrite is shared, every job that was written gets the whole time
+        long nanos = System.nanoTime() - startNanos;
+        for (Job job : jobs) {
+            if (PATCHED.equals(job.status)) job.nanos = nanos;
+        }
+    }
+
+    private static boolean hasFailed(List<Job> jobs) {
+        for (Job job : jobs) {
+            if (FAILED.equals(job.status)) return true;
+        }
+        return false;
+    }
+
+    //sets the result of all the jobs that didn't fail
+    private static void finish(List<Job> jobs, String status, String message, long nanos) {
+        for (Job job : jobs) {
+            if (FAILED.equals(job.status)) continue;
+            job.status = status;
+            job.message = message;
+            job.nanos = nanos;
+        }
+    }
+
+    public static class Job {
+        private final String patch;
+        private final String jar;
+
+        //results, only set by the thread that patches the jar
+        private volatile String status;
+        private volatile String message = "";
+        private volatile long nanos;
+
+        public Job(String patch, String jar) {
+            this.patch = patch;
+            this.jar = jar;
+        }
+
+        public String getPatch() {
+            return patch;
+        }
+
+        public String getJar() {
+            return jar;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        void fail(String message) {
+            this.status = FAILED;
+            this.message = message;
+        }
+
+        void fail(Exception e) {
+            fail(e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName());
+        }
+
+        @Override
+        public String toString() {
+            return status + "\t" + patch + "\t" + jar + "\t" + (nanos / 1000000) + "\t" + message.replace('\t', ' ').replace('\n', ' ');
+        }
+    }
+}
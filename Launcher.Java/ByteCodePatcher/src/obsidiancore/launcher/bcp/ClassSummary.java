@@ -0,0 +1,84 @@
+package obsidiancore.launcher.bcp;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.Method;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+// The constant pool and the methods of a class, what Patch.needsPatch() looks at.
+// It's read without ClassParser: every JavaClass sets up the BCEL repository,
+// which indexes the whole class path and the Java runtime and takes longer than scanning all the libraries.
+
+public class ClassSummary {
+    private final String className;
+    private final ConstantPool constantPool;
+    private final Method[] methods;
+
+    private ClassSummary(String className, ConstantPool constantPool, Method[] methods) {
+        this.className = className;
+        this.constantPool = constantPool;
+        this.methods = methods;
+    }
+
+    public static ClassSummary read(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != Const.JVM_CLASSFILE_MAGIC) throw new ClassFormatException("Not a class file");
+        in.readUnsignedShort(); //minor version
+        in.readUnsignedShort(); //major version
+        ConstantPool cp = new ConstantPool(in);
+
+        in.readUnsignedShort(); //access flags
+        String className = cp.getConstantString(in.readUnsignedShort(), Const.CONSTANT_Class);
+        in.readUnsignedShort(); //super class
+        skip(in, in.readUnsignedShort() * 2); //interfaces
+
+        int fields = in.readUnsignedShort();
+        for (int i = 0; i < fields; i++) {
+            skip(in, 6); //access flags, name and descriptor
+            skipAttributes(in);
+        }
+
+        Method[] methods = new Method[in.readUnsignedShort()];
+        for (int i = 0; i < methods.length; i++) {
+            int accessFlags = in.readUnsignedShort();
+            int nameIndex = in.readUnsignedShort();
+            int signatureIndex = in.readUnsignedShort();
+            Attribute[] attributes = new Attribute[in.readUnsignedShort()];
+            for (int j = 0; j < attributes.length; j++) {
+                attributes[j] = Attribute.readAttribute(in, cp);
+            }
+            methods[i] = new Method(accessFlags, nameIndex, signatureIndex, attributes, cp);
+        }
+        return new ClassSummary(className, cp, methods);
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.readUnsignedShort(); //name
+            skip(in, in.readInt());
+        }
+    }
+
+    private static void skip(DataInputStream in, int n) throws IOException {
+        if (in.skipBytes(n) != n) throw new ClassFormatException("Truncated class file");
+    }
+
+    //the internal name, like "cpw/mods/fml/relauncher/CoreModManager"
+    public String getClassName() {
+        return className;
+    }
+
+    public ConstantPool getConstantPool() {
+        return constantPool;
+    }
+
+    public Method[] getMethods() {
+        return methods;
+    }
+}
@@ -1,106 +1,82 @@
 package obsidiancore.launcher.bcp;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.ClassParser;
-import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.*;
-
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URI;
-import java.nio.file.*;
-import java.util.HashMap;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
 
 // Thanks to FyberOptic and their post on the minecraft forum.
 // https://www.minecraftforum.net/forums/mapping-and-modding-java-edition/minecraft-mods/2206446-forge-1-6-4-1-7-2-java-8-compatibility-patch
 
 // Patches old versions of FML so that they don't crash on Java 8.
+// The sort method that is added is Collections.sort(), it's merged from a fragment (see FragmentCompiler).
 
-public class CoreModManager_Sort_Patch {
-    private CoreModManager_Sort_Patch() {
+public class CoreModManager_Sort_Patch extends AbstractPatch {
+    @Override
+    public String[] getTargetClasses() {
+        return new String[]{"cpw/mods/fml/relauncher/CoreModManager"};
     }
 
-    public static void patchSort(File libFile) throws Exception {
-        //create backup
-        Path copyPath = new File(libFile.getPath() + "~").toPath();
-        if (!Files.exists(copyPath))
-            Files.copy(libFile.toPath(), copyPath, StandardCopyOption.REPLACE_EXISTING);
-
-        // locate file system by using the syntax defined in java.net.JarURLConnection
-        URI uri = URI.create("jar:" + libFile.toURI());
-        try (FileSystem zipfs = FileSystems.newFileSystem(uri, new HashMap<String, String>())) {
-            //check that the jar file isn't already modified
-            Path metaPath = zipfs.getPath("META-INF");
-            if (!Files.isDirectory(metaPath)) throw new AlreadyPatchedException();
-
-            //patch
-            Path filePath = zipfs.getPath("cpw/mods/fml/relauncher/CoreModManager.class");
-            byte[] patchedFile;
-            try (InputStream is = Files.newInputStream(filePath)) {
-                patchedFile = createPatchedClass(is, filePath.toString());
-            }
+    @Override
+    public String[] getTargetMethods() {
+        return new String[]{"sortTweakList"};
+    }
 
-            //overwrite patched file
-            try (OutputStream os = Files.newOutputStream(filePath)) {
-                os.write(patchedFile);
-            }
+    @Override
+    public boolean needsPatch(ClassSummary summary) {
+        if (Shared.getMethod(summary.getMethods(), "sort") != null) return false;
 
-            //delete META-INF
-            Shared.deleteDir(metaPath);
-        }
+        Method method = Shared.getMethod(summary.getMethods(), "sortTweakList");
+        return method != null && method.getCode() != null && findSortCall(method.getCode().getCode(), summary.getConstantPool()) >= 0;
     }
 
-    private static byte[] createPatchedClass(InputStream inputStream, String fileName) throws Exception {
-        //load the unmodified class
-        ClassParser parser = new ClassParser(inputStream, fileName);
-        JavaClass classIn = parser.parse();
+    @Override
+    public void beforeClasses(JarRewriter jar) throws Exception {
+        //check that the jar file isn't already modified
+        if (!jar.getDirectory().hasDirectory("META-INF")) throw new AlreadyPatchedException();
+    }
 
-        ClassGen classGen = new ClassGen(classIn);
+    @Override
+    public void transform(ClassGen classGen) throws Exception {
         ConstantPoolGen cp = classGen.getConstantPool();
 
-        //add the sort method
-        if (Shared.getMethod(classIn.getMethods(), "sort") != null) throw new AlreadyPatchedException();
-        Method newCopy = Shared.copyMethod(classGen, getLocalSortMethod());
-
-        //patch cpw.mods.fml.relauncher.CoreModManager.sortTweakList()
-        Method origMethod = Shared.getMethod(classIn.getMethods(), "sortTweakList");
-        if (origMethod == null) throw new PatchException("Couldn't find method 'sortTweakList'");
+        if (Shared.getMethod(classGen.getMethods(), "sort") != null) throw new AlreadyPatchedException();
 
-        int sortIndex = cp.addMethodref(new MethodGen(newCopy, classGen.getClassName(), cp));
-        MethodGen methodGen = new MethodGen(origMethod, classIn.getClassName(), cp);
+        //find the call in cpw.mods.fml.relauncher.CoreModManager.sortTweakList()
+        Method origMethod = Shared.getMethod(classGen.getMethods(), "sortTweakList");
+        int sortCall = origMethod != null && origMethod.getCode() != null ? findSortCall(origMethod.getCode().getCode(), cp.getConstantPool()) : -1;
+        if (sortCall < 0) throw new PatchException("Couldn't patch 'sortTweakList'.");
 
-        boolean modified = false;
-        InstructionList il = methodGen.getInstructionList();
-        InstructionHandle[] ihs = il.getInstructionHandles();
-        for (InstructionHandle ih : ihs) {
-            Instruction i = ih.getInstruction();
-            if (i instanceof INVOKESTATIC) {
-                INVOKESTATIC is = (INVOKESTATIC) i;
-                if ("java.util.Collections".equals(is.getClassName(cp))) {
-                    is.setIndex(sortIndex);
-                    ih.setInstruction(is);
-                    modified = true;
-                    break;
-                }
-            }
-        }
-        if (!modified) throw new PatchException("Couldn't patch 'sortTweakList'.");
+        //add the sort method
+        Fragment sort = Fragment.get("Collections.sort");
+        sort.addTo(classGen);
 
-        classGen.replaceMethod(origMethod, methodGen.getMethod());
-        il.dispose();
+        //patch
+        byte[] code = origMethod.getCode().getCode().clone();
+        Shared.writeU2(code, sortCall + 1, cp.addMethodref(classGen.getClassName(), sort.getName(), sort.getSignature()));
+        classGen.replaceMethod(origMethod, Shared.replaceCode(origMethod, cp, code, 0));
+    }
 
-        //write the modified class
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        classGen.getJavaClass().dump(baos);
-        return baos.toByteArray();
+    @Override
+    public void afterClasses(JarRewriter jar) {
+        //delete META-INF
+        jar.deleteDirectory("META-INF");
     }
 
-    private static MethodGen getLocalSortMethod() throws ClassNotFoundException {
-        JavaClass clazz = Repository.lookupClass(Collections.class.getName());
-        Method lsm = Shared.getMethod(clazz.getMethods(), "sort");
-        return new MethodGen(lsm, clazz.getClassName(), new ConstantPoolGen(lsm.getConstantPool()));
+    //the offset of the call to java.util.Collections.sort() that crashes on Java 8 or -1
+    private static int findSortCall(byte[] code, ConstantPool cp) {
+        for (int pc : Shared.getInstructionOffsets(code)) {
+            if ((code[pc] & 0xff) != Const.INVOKESTATIC) continue;
+            ConstantCP ref = cp.getConstant(Shared.readU2(code, pc + 1));
+            ConstantNameAndType nameAndType = cp.getConstant(ref.getNameAndTypeIndex());
+            if ("java/util/Collections".equals(cp.getConstantString(ref.getClassIndex(), Const.CONSTANT_Class))
+                    && "sort".equals(nameAndType.getName(cp))) {
+                return pc;
+            }
+        }
+        return -1;
     }
 }
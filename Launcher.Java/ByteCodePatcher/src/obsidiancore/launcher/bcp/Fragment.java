@@ -0,0 +1,393 @@
+package obsidiancore.launcher.bcp;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A method compiled ahead of time (see FragmentCompiler) that is ready to be merged into another class.
+// The constants it uses are kept by value and the places in the bytecode and the stack map that refer to them are listed,
+// so merging only adds the constants to the target class and writes their new indexes into a copy of the bytes.
+// References to the class the fragment was compiled from become references to the target class.
+// Fragments are resources next to this class: fragments/<class>.<method>.fragment
+// A fragment keeps the SHA-256 of the class file it was compiled from. If the class next to it is a different one
+// (it was changed or built with another compiler) or the fragment is missing or of another version,
+// get() compiles the fragment from the class instead, so an outdated fragment is never merged.
+
+public class Fragment {
+    private static final int MAGIC = 0x42435046; //"BCPF"
+    private static final int VERSION = 2;
+
+    private static final ConcurrentHashMap<String, Fragment> loaded = new ConcurrentHashMap<>();
+
+    final String sourceClass; //internal name
+    final String sourceSha256; //of the class file
+    final String name;
+    final String signature;
+    final int accessFlags;
+    final int maxStack;
+    final int maxLocals;
+    final FragmentConstant[] constants; //referred to by number, starting at 1
+    final byte[] code;
+    final int[] codeRelocations; //offsets of the u2 constant numbers in the code
+    final int[][] exceptionTable; //start, end, handler, constant number of the caught class or 0
+    final byte[] stackMap; //the frames of the StackMapTable attribute or null
+    final int[] stackMapRelocations;
+
+    Fragment(String sourceClass, String sourceSha256, String name, String signature, int accessFlags, int maxStack, int maxLocals, FragmentConstant[] constants,
+             byte[] code, int[] codeRelocations, int[][] exceptionTable, byte[] stackMap, int[] stackMapRelocations) {
+        this.sourceClass = sourceClass;
+        this.sourceSha256 = sourceSha256;
+        this.name = name;
+        this.signature = signature;
+        this.accessFlags = accessFlags;
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+        this.constants = constants;
+        this.code = code;
+        this.codeRelocations = codeRelocations;
+        this.exceptionTable = exceptionTable;
+        this.stackMap = stackMap;
+        this.stackMapRelocations = stackMapRelocations;
+    }
+
+    //loads the fragment <class>.<method> the first time, fragments are never changed so they are shared
+    public static Fragment get(String name) throws IOException {
+        Fragment fragment = loaded.get(name);
+        if (fragment == null) {
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) throw new FileNotFoundException("Fragment not found: " + name);
+            String sourceClass = Fragment.class.getPackage().getName().replace('.', '/') + "/" + name.substring(0, dot);
+            byte[] classFile = readClassFile(sourceClass);
+
+            fragment = readCurrent(name, sha256(classFile));
+            if (fragment == null) fragment = FragmentCompiler.compile(sourceClass, name.substring(dot + 1), classFile);
+            loaded.putIfAbsent(name, fragment);
+        }
+        return fragment;
+    }
+
+    //the stored fragment or null if there is none, it's of another version or it wasn't compiled from the class file with the hash
+    private static Fragment readCurrent(String name, String sourceSha256) throws IOException {
+        try (InputStream is = Fragment.class.getResourceAsStream("fragments/" + name + ".fragment")) {
+            if (is == null) return null;
+            DataInputStream in = new DataInputStream(is);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            Fragment fragment = readFields(in);
+            return fragment.sourceSha256.equals(sourceSha256) ? fragment : null;
+        }
+    }
+
+    //the class file of a class in this jar
+    static byte[] readClassFile(String internalName) throws IOException {
+        try (InputStream is = Fragment.class.getResourceAsStream("/" + internalName + ".class")) {
+            if (is == null) throw new FileNotFoundException("Class file not found: " + internalName);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                baos.write(buf, 0, n);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            return PatchCache.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); //every Java has SHA-256
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    //adds the method to the class and returns it
+    public Method addTo(ClassGen classGen) {
+        ConstantPoolGen cp = classGen.getConstantPool();
+        int[] indexes = addConstants(cp, classGen.getClassName().replace('.', '/'));
+
+        CodeException[] exceptions = new CodeException[exceptionTable.length];
+        for (int i = 0; i < exceptions.length; i++) {
+            int[] e = exceptionTable[i];
+            exceptions[i] = new CodeException(e[0], e[1], e[2], indexes[e[3]]);
+        }
+
+        int codeName = cp.addUtf8("Code");
+        int stackMapName = stackMap != null ? cp.addUtf8("StackMapTable") : 0;
+        int methodName = cp.addUtf8(name);
+        int methodSignature = cp.addUtf8(signature);
+        ConstantPool pool = cp.getConstantPool(); //after the last constant was added
+
+        Attribute[] codeAttributes = new Attribute[0];
+        if (stackMap != null) {
+            codeAttributes = new Attribute[]{readAttribute(stackMapName, relocate(stackMap, stackMapRelocations, indexes), pool)};
+        }
+
+        Code c = new Code(codeName, 0, maxStack, maxLocals, relocate(code, codeRelocations, indexes), exceptions, codeAttributes, pool);
+        Method method = new Method(accessFlags, methodName, methodSignature, new Attribute[]{c}, pool);
+        classGen.addMethod(method);
+        return method;
+    }
+
+    //the bytecode for the class, for fragments that are used as instruction templates
+    public byte[] getCode(ClassGen classGen) {
+        if (exceptionTable.length > 0 || stackMap != null) throw new IllegalStateException("Only straight code can be used as a template: " + name);
+        return relocate(code, codeRelocations, addConstants(classGen.getConstantPool(), classGen.getClassName().replace('.', '/')));
+    }
+
+    //returns the index in the target pool for every constant number
+    private int[] addConstants(ConstantPoolGen cp, String targetClass) {
+        int[] indexes = new int[constants.length + 1];
+        for (int i = 0; i < constants.length; i++) {
+            indexes[i + 1] = constants[i].addTo(cp, sourceClass, targetClass);
+        }
+        return indexes;
+    }
+
+    private static byte[] relocate(byte[] bytes, int[] relocations, int[] indexes) {
+        byte[] result = bytes.clone();
+        for (int offset : relocations) {
+            Shared.writeU2(result, offset, indexes[Shared.readU2(bytes, offset)]);
+        }
+        return result;
+    }
+
+    private static Attribute readAttribute(int nameIndex, byte[] data, ConstantPool pool) {
+        byte[] attribute = new byte[6 + data.length];
+        Shared.writeU2(attribute, 0, nameIndex);
+        attribute[2] = (byte) (data.length >> 24);
+        attribute[3] = (byte) (data.length >> 16);
+        attribute[4] = (byte) (data.length >> 8);
+        attribute[5] = (byte) data.length;
+        System.arraycopy(data, 0, attribute, 6, data.length);
+        try {
+            return Attribute.readAttribute(new DataInputStream(new ByteArrayInputStream(attribute)), pool);
+        } catch (IOException e) {
+            throw new RuntimeException(e); //it's all in memory
+        }
+    }
+
+    public static Fragment read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) throw new IOException("Not a fragment");
+        if (in.readInt() != VERSION) throw new IOException("Fragment of another version, it has to be compiled again with FragmentCompiler");
+        return readFields(in);
+    }
+
+    private static Fragment readFields(DataInputStream in) throws IOException {
+        String sourceClass = in.readUTF();
+        String sourceSha256 = in.readUTF();
+        String name = in.readUTF();
+        String signature = in.readUTF();
+        int accessFlags = in.readUnsignedShort();
+        int maxStack = in.readUnsignedShort();
+        int maxLocals = in.readUnsignedShort();
+
+        FragmentConstant[] constants = new FragmentConstant[in.readUnsignedShort()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = FragmentConstant.read(in);
+        }
+
+        byte[] code = readBytes(in);
+        int[] codeRelocations = readInts(in);
+        int[][] exceptionTable = new int[in.readUnsignedShort()][];
+        for (int i = 0; i < exceptionTable.length; i++) {
+            exceptionTable[i] = new int[]{in.readUnsignedShort(), in.readUnsignedShort(), in.readUnsignedShort(), in.readUnsignedShort()};
+        }
+        byte[] stackMap = in.readBoolean() ? readBytes(in) : null;
+        int[] stackMapRelocations = readInts(in);
+
+        return new Fragment(sourceClass, sourceSha256, name, signature, accessFlags, maxStack, maxLocals, constants,
+                code, codeRelocations, exceptionTable, stackMap, stackMapRelocations);
+    }
+
+    public void write(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(sourceClass);
+        out.writeUTF(sourceSha256);
+        out.writeUTF(name);
+        out.writeUTF(signature);
+        out.writeShort(accessFlags);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+
+        out.writeShort(constants.length);
+        for (FragmentConstant c : constants) {
+            c.write(out);
+        }
+
+        writeBytes(out, code);
+        writeInts(out, codeRelocations);
+        out.writeShort(exceptionTable.length);
+        for (int[] e : exceptionTable) {
+            for (int v : e) out.writeShort(v);
+        }
+        out.writeBoolean(stackMap != null);
+        if (stackMap != null) writeBytes(out, stackMap);
+        writeInts(out, stackMapRelocations);
+        out.flush();
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return b;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readUnsignedShort()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeShort(values.length);
+        for (int v : values) out.writeInt(v);
+    }
+
+    static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    //a constant by value: a class, a field or method reference, a string or a number
+    static class FragmentConstant {
+        final byte tag;
+        final String className; //for classes and references
+        final String name; //for references
+        final String signature; //for references
+        final Object value; //for strings and numbers
+
+        FragmentConstant(byte tag, String className, String name, String signature, Object value) {
+            this.tag = tag;
+            this.className = className;
+            this.name = name;
+            this.signature = signature;
+            this.value = value;
+        }
+
+        int addTo(ConstantPoolGen cp, String sourceClass, String targetClass) {
+            String cls = sourceClass.equals(className) ? targetClass : className;
+            String sig = signature != null ? signature.replace("L" + sourceClass + ";", "L" + targetClass + ";") : null;
+            switch (tag) {
+                case Const.CONSTANT_Class:
+                    return cp.addClass(cls);
+                case Const.CONSTANT_Fieldref:
+                    return cp.addFieldref(cls, name, sig);
+                case Const.CONSTANT_Methodref:
+                    return cp.addMethodref(cls, name, sig);
+                case Const.CONSTANT_InterfaceMethodref:
+                    return cp.addInterfaceMethodref(cls, name, sig);
+                case Const.CONSTANT_String:
+                    return cp.addString((String) value);
+                case Const.CONSTANT_Integer:
+                    return cp.addInteger((Integer) value);
+                case Const.CONSTANT_Float:
+                    return cp.addFloat((Float) value);
+                case Const.CONSTANT_Long:
+                    return cp.addLong((Long) value);
+                case Const.CONSTANT_Double:
+                    return cp.addDouble((Double) value);
+                default:
+                    throw new IllegalStateException("Unsupported constant " + tag);
+            }
+        }
+
+        static FragmentConstant read(DataInputStream in) throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case Const.CONSTANT_Class:
+                    return new FragmentConstant(tag, in.readUTF(), null, null, null);
+                case Const.CONSTANT_Fieldref:
+                case Const.CONSTANT_Methodref:
+                case Const.CONSTANT_InterfaceMethodref:
+                    return new FragmentConstant(tag, in.readUTF(), in.readUTF(), in.readUTF(), null);
+                case Const.CONSTANT_String:
+                    return new FragmentConstant(tag, null, null, null, in.readUTF());
+                case Const.CONSTANT_Integer:
+                    return new FragmentConstant(tag, null, null, null, in.readInt());
+                case Const.CONSTANT_Float:
+                    return new FragmentConstant(tag, null, null, null, in.readFloat());
+                case Const.CONSTANT_Long:
+                    return new FragmentConstant(tag, null, null, null, in.readLong());
+                case Const.CONSTANT_Double:
+                    return new FragmentConstant(tag, null, null, null, in.readDouble());
+                default:
+                    throw new IOException("Unsupported constant " + tag);
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeByte(tag);
+            switch (tag) {
+                case Const.CONSTANT_Class:
+                    out.writeUTF(className);
+                    break;
+                case Const.CONSTANT_Fieldref:
+                case Const.CONSTANT_Methodref:
+                case Const.CONSTANT_InterfaceMethodref:
+                    out.writeUTF(className);
+                    out.writeUTF(name);
+                    out.writeUTF(signature);
+                    break;
+                case Const.CONSTANT_String:
+                    out.writeUTF((String) value);
+                    break;
+                case Const.CONSTANT_Integer:
+                    out.writeInt((Integer) value);
+                    break;
+                case Const.CONSTANT_Float:
+                    out.writeFloat((Float) value);
+                    break;
+                case Const.CONSTANT_Long:
+                    out.writeLong((Long) value);
+                    break;
+                case Const.CONSTANT_Double:
+                    out.writeDouble((Double) value);
+                    break;
+                default:
+                    throw new IOException("Unsupported constant " + tag);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package obsidiancore.launcher.bcp;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantFloat;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.StackMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Usage: FragmentCompiler <source dir>
+// Turns the methods in FRAGMENTS into fragments (see Fragment) and writes them into
+// <source dir>/obsidiancore/launcher/bcp/fragments/, where they are packed into the jar with the classes.
+// Has to be run again after the class file of one of the fragment classes changed (also when it's built with another compiler),
+// until then Fragment.get compiles the fragments when they are first used.
+
+public class FragmentCompiler {
+    //class, method
+    private static final Object[][] FRAGMENTS = {
+            {Collections.class, "sort"},
+            {SecureJarHandler_ManifestEntryVerifier_Fragment.class, "clinitEnd"},
+    };
+
+    private static final int ITEM_OBJECT = 7;
+    private static final int ITEM_UNINITIALIZED = 8;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) System.exit(1);
+
+        File dir = new File(args[0], Fragment.class.getPackage().getName().replace('.', '/') + "/fragments");
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+
+        for (Object[] f : FRAGMENTS) {
+            Class<?> clazz = (Class<?>) f[0];
+            String methodName = (String) f[1];
+            File file = new File(dir, clazz.getSimpleName() + "." + methodName + ".fragment");
+            try (OutputStream os = new FileOutputStream(file)) {
+                compile(clazz, methodName).write(os);
+            }
+            System.out.println(file);
+        }
+    }
+
+    public static Fragment compile(Class<?> clazz, String methodName) throws IOException {
+        String internalName = clazz.getName().replace('.', '/');
+        return compile(internalName, methodName, Fragment.readClassFile(internalName));
+    }
+
+    public static Fragment compile(String internalName, String methodName, byte[] classFile) throws IOException {
+        JavaClass jc = new ClassParser(new ByteArrayInputStream(classFile), internalName + ".class").parse();
+        Method method = Shared.getMethod(jc.getMethods(), methodName);
+        if (method == null || method.getCode() == null) throw new IOException("Method not found: " + internalName + "." + methodName);
+
+        Code code = method.getCode();
+        ConstantPool cp = jc.getConstantPool();
+        Map<Integer, Integer> numbers = new LinkedHashMap<>(); //index in the class -> constant number in the fragment
+
+        //the instructions with a constant pool index
+        byte[] bytes = code.getCode().clone();
+        List<Integer> codeRelocations = new ArrayList<>();
+        for (int pc : Shared.getInstructionOffsets(bytes)) {
+            int op = bytes[pc] & 0xff;
+            switch (op) {
+                case Const.LDC_W:
+                case Const.LDC2_W:
+                case Const.GETSTATIC:
+                case Const.PUTSTATIC:
+                case Const.GETFIELD:
+                case Const.PUTFIELD:
+                case Const.INVOKEVIRTUAL:
+                case Const.INVOKESPECIAL:
+                case Const.INVOKESTATIC:
+                case Const.INVOKEINTERFACE:
+                case Const.NEW:
+                case Const.ANEWARRAY:
+                case Const.CHECKCAST:
+                case Const.INSTANCEOF:
+                case Const.MULTIANEWARRAY:
+                    relocate(bytes, pc + 1, numbers, codeRelocations);
+                    break;
+                case Const.LDC: //one byte index, there may not be room for it in the target class
+                case Const.INVOKEDYNAMIC:
+                    throw new IOException("Unsupported instruction " + Const.getOpcodeName(op) + " at " + pc + " in " + internalName + "." + methodName);
+            }
+        }
+
+        int[][] exceptionTable = new int[code.getExceptionTable().length][];
+        for (int i = 0; i < exceptionTable.length; i++) {
+            CodeException e = code.getExceptionTable()[i];
+            int catchType = e.getCatchType() != 0 ? number(e.getCatchType(), numbers) : 0;
+            exceptionTable[i] = new int[]{e.getStartPC(), e.getEndPC(), e.getHandlerPC(), catchType};
+        }
+
+        byte[] stackMap = null;
+        List<Integer> stackMapRelocations = new ArrayList<>();
+        for (Attribute a : code.getAttributes()) {
+            if (a instanceof StackMap) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                a.dump(new DataOutputStream(baos));
+                stackMap = Arrays.copyOfRange(baos.toByteArray(), 6, baos.size()); //without the name and the length
+                relocateStackMap(stackMap, numbers, stackMapRelocations);
+            }
+        }
+
+        Fragment.FragmentConstant[] constants = new Fragment.FragmentConstant[numbers.size()];
+        for (Map.Entry<Integer, Integer> e : numbers.entrySet()) {
+            constants[e.getValue() - 1] = toFragmentConstant(cp, e.getKey());
+        }
+
+        return new Fragment(jc.getClassName().replace('.', '/'), Fragment.sha256(classFile), methodName, method.getSignature(), method.getAccessFlags(),
+                code.getMaxStack(), code.getMaxLocals(), constants, bytes, Fragment.toArray(codeRelocations),
+                exceptionTable, stackMap, Fragment.toArray(stackMapRelocations));
+    }
+
+    //replaces the index at pos with the constant number and records the position
+    private static void relocate(byte[] b, int pos, Map<Integer, Integer> numbers, List<Integer> relocations) {
+        Shared.writeU2(b, pos, number(Shared.readU2(b, pos), numbers));
+        relocations.add(pos);
+    }
+
+    private static int number(int index, Map<Integer, Integer> numbers) {
+        Integer n = numbers.get(index);
+        if (n == null) {
+            n = numbers.size() + 1;
+            numbers.put(index, n);
+        }
+        return n;
+    }
+
+    //the class of every object item in the frames
+    private static void relocateStackMap(byte[] b, Map<Integer, Integer> numbers, List<Integer> relocations) throws IOException {
+        int count = Shared.readU2(b, 0);
+        int pos = 2;
+        for (int i = 0; i < count; i++) {
+            int type = b[pos++] & 0xff;
+            if (type < 64) continue; //same
+            if (type < 128) { //same locals 1 stack item
+                pos = relocateItems(b, pos, 1, numbers, relocations);
+            } else if (type == 247) { //same locals 1 stack item extended
+                pos = relocateItems(b, pos + 2, 1, numbers, relocations);
+            } else if (type >= 248 && type <= 251) { //chop, same extended
+                pos += 2;
+            } else if (type >= 252 && type <= 254) { //append
+                pos = relocateItems(b, pos + 2, type - 251, numbers, relocations);
+            } else if (type == 255) { //full
+                pos = relocateItems(b, pos + 4, Shared.readU2(b, pos + 2), numbers, relocations);
+                pos = relocateItems(b, pos + 2, Shared.readU2(b, pos), numbers, relocations);
+            } else {
+                throw new IOException("Invalid stack map frame " + type);
+            }
+        }
+    }
+
+    private static int relocateItems(byte[] b, int pos, int count, Map<Integer, Integer> numbers, List<Integer> relocations) {
+        for (int i = 0; i < count; i++) {
+            int tag = b[pos++] & 0xff;
+            if (tag == ITEM_OBJECT) relocate(b, pos, numbers, relocations);
+            if (tag == ITEM_OBJECT || tag == ITEM_UNINITIALIZED) pos += 2; //an uninitialized item has a code offset
+        }
+        return pos;
+    }
+
+    private static Fragment.FragmentConstant toFragmentConstant(ConstantPool cp, int index) throws IOException {
+        Constant c = cp.getConstant(index);
+        byte tag = c.getTag();
+        switch (tag) {
+            case Const.CONSTANT_Class:
+                return new Fragment.FragmentConstant(tag, cp.getConstantString(index, Const.CONSTANT_Class), null, null, null);
+            case Const.CONSTANT_Fieldref:
+            case Const.CONSTANT_Methodref:
+            case Const.CONSTANT_InterfaceMethodref:
+                ConstantCP ref = (ConstantCP) c;
+                ConstantNameAndType nameAndType = cp.getConstant(ref.getNameAndTypeIndex());
+                return new Fragment.FragmentConstant(tag, cp.getConstantString(ref.getClassIndex(), Const.CONSTANT_Class),
+                        nameAndType.getName(cp), nameAndType.getSignature(cp), null);
+            case Const.CONSTANT_String:
+                return new Fragment.FragmentConstant(tag, null, null, null, ((ConstantString) c).getConstantValue(cp));
+            case Const.CONSTANT_Integer:
+                return new Fragment.FragmentConstant(tag, null, null, null, ((ConstantInteger) c).getBytes());
+            case Const.CONSTANT_Float:
+                return new Fragment.FragmentConstant(tag, null, null, null, ((ConstantFloat) c).getBytes());
+            case Const.CONSTANT_Long:
+                return new Fragment.FragmentConstant(tag, null, null, null, ((ConstantLong) c).getBytes());
+            case Const.CONSTANT_Double:
+                return new Fragment.FragmentConstant(tag, null, null, null, ((ConstantDouble) c).getBytes());
+            default:
+                throw new IOException("Unsupported constant " + c);
+        }
+    }
+}
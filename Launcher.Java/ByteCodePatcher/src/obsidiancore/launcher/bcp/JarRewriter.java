@@ -0,0 +1,349 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Rewrites a jar in a single pass: unchanged entries are copied as raw compressed bytes,
+// only the replaced entries are compressed again. The new jar is written to a temporary file
+// next to the original and then renamed over it, so the jar is never left half written.
+// Instead of a copy of the original jar only a ReverseDelta is kept as the backup,
+// the original records of the changed entries and the original central directory.
+// The original is read once in file order while the new jar is written, the hashes of both are taken from that copy.
+
+public class JarRewriter implements Closeable {
+    private final File file;
+    private final FileChannel in;
+    private final ZipDirectory directory;
+    private final long startNanos;
+
+    private final Map<String, byte[]> replacements = new HashMap<>();
+    private final Set<String> deleted = new HashSet<>();
+
+    //how to get the original from the new jar, in the order of the original file, and the same by record offset
+    private final List<ReverseDelta.Op> restoreOps = new ArrayList<>();
+    private final Map<Long, ReverseDelta.Op> restoreOpsByOffset = new HashMap<>();
+
+    //the hashes taken while the new jar is written, originalPos is how far the original was hashed
+    private MessageDigest[] originalDigests;
+    private MessageDigest patchedDigest;
+    private long originalPos;
+    private ByteBuffer copyBuffer;
+
+    private long bytesCopied;
+    private long bytesWritten;
+    private long elapsedNanos;
+
+    public JarRewriter(File file) throws IOException {
+        this.startNanos = System.nanoTime();
+        this.file = file;
+        this.in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.directory = ZipDirectory.read(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public ZipDirectory getDirectory() {
+        return directory;
+    }
+
+    //reads and inflates an entry, returns null if it doesn't exist
+    //an entry that was already replaced returns the new content, so patches can be stacked
+    public byte[] read(String name) throws IOException {
+        if (deleted.contains(name)) return null;
+        byte[] replacement = replacements.get(name);
+        if (replacement != null) return replacement.clone();
+
+        ZipDirectory.Entry e = directory.getEntry(name);
+        return e == null ? null : directory.readEntry(in, e);
+    }
+
+    public void replace(String name, byte[] data) throws PatchException {
+        if (directory.getEntry(name) == null) throw new PatchException("Couldn't find " + name);
+        replacements.put(name, data);
+    }
+
+    //deletes all the entries in the directory and below it
+    public void deleteDirectory(String dir) {
+        String prefix = dir.endsWith("/") ? dir : dir + "/";
+        for (ZipDirectory.Entry e : directory.getEntries()) {
+            if (e.name.startsWith(prefix)) deleted.add(e.name);
+        }
+    }
+
+    public boolean isModified() {
+        return !replacements.isEmpty() || !deleted.isEmpty();
+    }
+
+    public RewriteStats commit(File deltaFile) throws IOException {
+        return commit(deltaFile, null);
+    }
+
+    //Writes the new jar and replaces the original with it.
+    //The delta to get back the original is written first. If the jar already has a delta (it was patched before),
+    //the new one still leads back to the first original.
+    //originalSha256 is the SHA-256 of the jar if the caller already has it, otherwise it's taken while writing.
+    public RewriteStats commit(File deltaFile, String originalSha256) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            originalDigests = originalSha256 == null ? new MessageDigest[]{newDigest("SHA-1"), newDigest("SHA-256")} : new MessageDigest[]{newDigest("SHA-1")};
+            patchedDigest = newDigest("SHA-256");
+            originalPos = 0;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(out);
+                out.force(false);
+            }
+            if (originalPos != in.size()) throw new IOException("Not all of " + file + " was copied");
+
+            String sha1 = PatchCache.toHex(originalDigests[0].digest());
+            String sha256 = originalSha256 == null ? PatchCache.toHex(originalDigests[1].digest()) : originalSha256;
+            ReverseDelta previous = deltaFile.isFile() ? ReverseDelta.readFor(file, sha256) : null;
+            ReverseDelta delta = previous != null ? previous.then(restoreOpsByOffset) : new ReverseDelta(sha1, sha256, in.size(), restoreOps);
+            delta.setPatchedSha256(PatchCache.toHex(patchedDigest.digest()));
+            in.close(); //Windows won't rename over an open file
+
+            delta.write(deltaFile);
+            replaceFile(tmp, file);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        elapsedNanos = System.nanoTime() - startNanos;
+        return getStats();
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); //every Java has SHA-1 and SHA-256
+        }
+    }
+
+    //renames the new file over the target
+    static void replaceFile(Path newFile, File target) throws IOException {
+        try {
+            Files.move(newFile, target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(newFile, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //files are only ever renamed over, never written to, so a link keeps its content
+    static void linkOrCopy(Path existing, Path link) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(existing, link, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    public RewriteStats getStats() {
+        return new RewriteStats(file, directory.getBytesRead() + bytesCopied, bytesWritten,
+                elapsedNanos != 0 ? elapsedNanos : System.nanoTime() - startNanos);
+    }
+
+    private void write(FileChannel out) throws IOException {
+        //records are copied in the order they are in the file, each one reaches up to the next one
+        List<ZipDirectory.Entry> byOffset = new ArrayList<>(directory.getEntries());
+        java.util.Collections.sort(byOffset, new Comparator<ZipDirectory.Entry>() {
+            public int compare(ZipDirectory.Entry a, ZipDirectory.Entry b) {
+                return Long.compare(a.localHeaderOffset, b.localHeaderOffset);
+            }
+        });
+
+        Map<ZipDirectory.Entry, Long> newOffsets = new HashMap<>(byOffset.size() * 2);
+        Map<ZipDirectory.Entry, byte[]> newCentralRecords = new HashMap<>();
+        long outPos = 0;
+
+        //a run of unchanged records is copied with one transfer
+        long runStart = -1, runEnd = -1;
+
+        //anything before the first record isn't copied
+        long firstRecord = byOffset.isEmpty() ? directory.getCentralDirectoryOffset() : byOffset.get(0).localHeaderOffset;
+        if (firstRecord > 0) restoreOps.add(new ReverseDelta.Op(readRaw(0, firstRecord)));
+
+        for (int i = 0; i < byOffset.size(); i++) {
+            ZipDirectory.Entry e = byOffset.get(i);
+            long recordEnd = i + 1 < byOffset.size() ? byOffset.get(i + 1).localHeaderOffset : directory.getCentralDirectoryOffset();
+            byte[] replacement = replacements.get(e.name);
+
+            if (replacement == null && !deleted.contains(e.name)) {
+                if (runStart < 0) runStart = e.localHeaderOffset;
+                else if (runEnd != e.localHeaderOffset) {
+                    outPos += transfer(out, runStart, runEnd, outPos);
+                    runStart = e.localHeaderOffset;
+                }
+                newOffsets.put(e, outPos + (e.localHeaderOffset - runStart));
+                addRestoreOp(e, new ReverseDelta.Op(outPos + (e.localHeaderOffset - runStart), recordEnd - e.localHeaderOffset));
+                runEnd = recordEnd;
+                continue;
+            }
+
+            if (runStart >= 0) {
+                outPos += transfer(out, runStart, runEnd, outPos);
+                runStart = -1;
+            }
+            addRestoreOp(e, new ReverseDelta.Op(readRaw(e.localHeaderOffset, recordEnd)));
+            if (replacement != null) {
+                newOffsets.put(e, outPos);
+                byte[][] records = createRecords(e, replacement);
+                newCentralRecords.put(e, records[1]);
+                outPos += writeFully(out, ByteBuffer.wrap(records[0]), outPos);
+            }
+        }
+        if (runStart >= 0) outPos += transfer(out, runStart, runEnd, outPos);
+
+        //the central directory in its original order
+        long cdOffset = outPos;
+        ByteArrayOutputStream cd = new ByteArrayOutputStream((int) directory.getCentralDirectorySize());
+        int count = 0;
+        for (ZipDirectory.Entry e : directory.getEntries()) {
+            Long offset = newOffsets.get(e);
+            if (offset == null) continue;
+            byte[] record = newCentralRecords.get(e);
+            if (record == null) record = e.centralRecord.clone();
+            ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).putInt(42, (int) (long) offset);
+            cd.write(record);
+            count++;
+        }
+        outPos += writeFully(out, ByteBuffer.wrap(cd.toByteArray()), outPos);
+
+        ByteBuffer end = ByteBuffer.wrap(directory.getEnd()).order(ByteOrder.LITTLE_ENDIAN);
+        end.putShort(8, (short) count);
+        end.putShort(10, (short) count);
+        end.putInt(12, cd.size());
+        end.putInt(16, (int) cdOffset);
+        outPos += writeFully(out, end, outPos);
+
+        restoreOps.add(new ReverseDelta.Op(readRaw(directory.getCentralDirectoryOffset(), in.size())));
+        bytesWritten = outPos;
+    }
+
+    private void addRestoreOp(ZipDirectory.Entry e, ReverseDelta.Op op) {
+        restoreOps.add(op);
+        restoreOpsByOffset.put(e.localHeaderOffset, op);
+    }
+
+    private byte[] readRaw(long from, long to) throws IOException {
+        if (to - from > Integer.MAX_VALUE) throw new IOException("Record too large in " + file);
+        bytesCopied += to - from;
+        ByteBuffer buf = ZipDirectory.readFully(in, from, (int) (to - from));
+        hashOriginal(from, buf);
+        return buf.array();
+    }
+
+    //the original is only ever read forward, so its hashes can be taken on the way
+    private void hashOriginal(long from, ByteBuffer buf) {
+        if (from != originalPos) throw new IllegalStateException("The original isn't read in order at " + from + " in " + file);
+        for (MessageDigest md : originalDigests) {
+            md.update(buf.duplicate());
+        }
+        originalPos += buf.remaining();
+    }
+
+    //copies through a buffer instead of transferTo, the bytes are needed for the hashes of both jars
+    private long transfer(FileChannel out, long from, long to, long outPos) throws IOException {
+        if (copyBuffer == null) copyBuffer = ByteBuffer.allocateDirect(256 * 1024);
+        long len = to - from;
+        long done = 0;
+        while (done < len) {
+            copyBuffer.clear();
+            copyBuffer.limit((int) Math.min(copyBuffer.capacity(), len - done));
+            int n = in.read(copyBuffer, from + done);
+            if (n <= 0) throw new IOException("Unexpected end of " + file);
+            copyBuffer.flip();
+            hashOriginal(from + done, copyBuffer);
+            writeFully(out, copyBuffer, outPos + done);
+            done += n;
+        }
+        bytesCopied += len;
+        return len;
+    }
+
+    private long writeFully(FileChannel out, ByteBuffer buf, long position) throws IOException {
+        patchedDigest.update(buf.duplicate());
+        long len = buf.remaining();
+        while (buf.hasRemaining()) {
+            out.write(buf, position + (len - buf.remaining()));
+        }
+        return len;
+    }
+
+    //returns the local record (header and data) and the central directory record for the new content
+    private static byte[][] createRecords(ZipDirectory.Entry e, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] compressed;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                baos.write(buf, 0, n);
+            }
+            compressed = baos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+
+        //the name and the other fields are kept from the original central record, the data descriptor isn't used
+        ByteBuffer central = ByteBuffer.wrap(e.centralRecord.clone()).order(ByteOrder.LITTLE_ENDIAN);
+        int flags = e.flags & ~0x8;
+        central.putShort(8, (short) flags);
+        central.putShort(10, (short) 8);
+        central.putInt(16, (int) crc.getValue());
+        central.putInt(20, compressed.length);
+        central.putInt(24, data.length);
+
+        int nameLen = central.getShort(28) & 0xffff;
+        ByteBuffer local = ByteBuffer.allocate(ZipDirectory.LOCAL_HEADER_SIZE + nameLen + compressed.length).order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(ZipDirectory.LOCAL_HEADER_SIG);
+        local.putShort(central.getShort(6)); //version needed
+        local.putShort((short) flags);
+        local.putShort((short) 8);
+        local.putShort(central.getShort(12)); //time
+        local.putShort(central.getShort(14)); //date
+        local.putInt((int) crc.getValue());
+        local.putInt(compressed.length);
+        local.putInt(data.length);
+        local.putShort((short) nameLen);
+        local.putShort((short) 0);
+        local.put(e.centralRecord, ZipDirectory.CENTRAL_HEADER_SIZE, nameLen);
+        local.put(compressed);
+
+        return new byte[][]{local.array(), central.array()};
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
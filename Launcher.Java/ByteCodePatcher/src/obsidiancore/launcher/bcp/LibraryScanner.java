@@ -0,0 +1,160 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Finds the jars that need a patch by looking at the classes themselves instead of at version numbers.
+// The directory tree is walked in parallel and of every jar only the central directory is read,
+// only the target classes of the patches are read (see ClassSummary) and given to Patch.needsPatch().
+// For every jar that needs a patch a "<patch> <jar>" line is printed, so the output is a job list for BatchPatcher.
+// Jars that can't be read are reported on "#" lines, which the job list ignores.
+
+public class LibraryScanner {
+    private final Map<String, List<Patch>> targets = new HashMap<>(); //entry name -> patches
+
+    private final Queue<BatchPatcher.Job> jobs = new ConcurrentLinkedQueue<>();
+    private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger jarsScanned = new AtomicInteger();
+    private final AtomicInteger classesParsed = new AtomicInteger();
+
+    public LibraryScanner(List<Patch> patches) {
+        for (Patch patch : patches) {
+            for (String className : patch.getTargetClasses()) {
+                String entryName = className + ".class";
+                List<Patch> list = targets.get(entryName);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    targets.put(entryName, list);
+                }
+                list.add(patch);
+            }
+        }
+    }
+
+    //scans the directory with all the patches and prints the job list, or applies it if apply is set
+    //returns false if the directory doesn't exist or (when applying) a job failed
+    public static boolean run(String dir, boolean apply, PrintStream out) {
+        File root = new File(dir);
+        if (!root.isDirectory()) {
+            out.println("# Directory not found: " + dir);
+            return false;
+        }
+
+        long startNanos = System.nanoTime();
+        LibraryScanner scanner = new LibraryScanner(PatchRegistry.getAll());
+        List<BatchPatcher.Job> jobs = scanner.scan(root);
+        for (String error : scanner.getErrors()) {
+            out.println("# " + error.replace('\n', ' '));
+        }
+        out.println("# Scanned " + scanner.getJarsScanned() + " jars, parsed " + scanner.getClassesParsed() + " classes in " + ((System.nanoTime() - startNanos) / 1000000) + " ms");
+
+        if (apply) return BatchPatcher.run(jobs, out);
+
+        for (BatchPatcher.Job job : jobs) {
+            out.println(job.getPatch() + " " + job.getJar());
+        }
+        out.flush();
+        return true;
+    }
+
+    //returns the jobs sorted by jar, can only be called once
+    public List<BatchPatcher.Job> scan(File dir) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new DirectoryTask(dir));
+        } finally {
+            pool.shutdown();
+        }
+
+        List<BatchPatcher.Job> sorted = new ArrayList<>(jobs);
+        java.util.Collections.sort(sorted, new Comparator<BatchPatcher.Job>() { //not our Collections
+            public int compare(BatchPatcher.Job a, BatchPatcher.Job b) {
+                int c = a.getJar().compareTo(b.getJar());
+                return c != 0 ? c : a.getPatch().compareTo(b.getPatch());
+            }
+        });
+        return sorted;
+    }
+
+    public List<String> getErrors() {
+        List<String> sorted = new ArrayList<>(errors);
+        java.util.Collections.sort(sorted);
+        return sorted;
+    }
+
+    public int getJarsScanned() {
+        return jarsScanned.get();
+    }
+
+    public int getClassesParsed() {
+        return classesParsed.get();
+    }
+
+    private void scanJar(File file) {
+        jarsScanned.incrementAndGet();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ZipDirectory directory = ZipDirectory.read(channel, targets.keySet());
+
+            Set<Patch> needed = new LinkedHashSet<>();
+            for (Map.Entry<String, List<Patch>> target : targets.entrySet()) {
+                ZipDirectory.Entry entry = directory.getEntry(target.getKey());
+                if (entry == null) continue;
+
+                ClassSummary summary = ClassSummary.read(directory.readEntry(channel, entry));
+                classesParsed.incrementAndGet();
+                for (Patch patch : target.getValue()) {
+                    if (patch.needsPatch(summary)) needed.add(patch);
+                }
+            }
+
+            for (Patch patch : needed) {
+                jobs.add(new BatchPatcher.Job(patch.getName(), file.getPath()));
+            }
+        } catch (Exception e) {
+            errors.add(file.getPath() + ": " + (e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName()));
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private final File dir;
+
+        DirectoryTask(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            File[] files = dir.listFiles();
+            if (files == null) return;
+
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (final File file : files) {
+                if (file.isDirectory()) {
+                    tasks.add(new DirectoryTask(file));
+                } else if (file.getName().endsWith(".jar")) {
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            scanJar(file);
+                        }
+                    });
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package obsidiancore.launcher.bcp;
+
+import org.apache.bcel.generic.ClassGen;
+
+// A fix for one problem in a library jar.
+// Patches are found with ServiceLoader (META-INF/services/obsidiancore.launcher.bcp.Patch),
+// the name is what the command line and the batch job lists use. See PatchEngine for how they are applied.
+// Patches are shared between the threads of the batch mode, so they must not keep any state.
+// The load time agent (PatchAgent) only calls transform(), the jar level steps are only done when jars are rewritten.
+// The scanner (LibraryScanner) only calls needsPatch().
+
+public interface Patch {
+    String getName();
+
+    //internal names of the classes the patch changes, like "cpw/mods/fml/relauncher/CoreModManager"
+    String[] getTargetClasses();
+
+    //methods that have to exist in every target class
+    String[] getTargetMethods();
+
+    //true if the target class still has the problem the patch fixes
+    boolean needsPatch(ClassSummary summary);
+
+    //called once per jar before the classes are transformed, can throw AlreadyPatchedException
+    void beforeClasses(JarRewriter jar) throws Exception;
+
+    //called for every target class, can throw AlreadyPatchedException
+    //the class is shared with the other patches, so the checks have to be done before anything is changed
+    void transform(ClassGen classGen) throws Exception;
+
+    //called once per jar after all the classes were transformed successfully
+    void afterClasses(JarRewriter jar) throws Exception;
+}
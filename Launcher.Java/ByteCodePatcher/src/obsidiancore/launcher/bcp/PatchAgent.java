@@ -0,0 +1,120 @@
+package obsidiancore.launcher.bcp;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.generic.ClassGen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Applies the patches while the classes are loaded instead of rewriting the jars (-javaagent:Launcher.Java.jar[=options]).
+// Only Patch.transform() is used, the jars stay as they are, so signed jars keep working.
+// Every other class is rejected with a single hash lookup of its name.
+// Options, separated with ',': "patches=A+B" to apply only some of the patches, "stats" to print the time spent in the agent at exit.
+
+public class PatchAgent implements ClassFileTransformer {
+    private final Map<String, List<Patch>> targets = new HashMap<>(); //internal class name -> patches
+
+    private final AtomicLong classes = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong patchNanos = new AtomicLong();
+    private final AtomicInteger patched = new AtomicInteger();
+
+    public PatchAgent(List<Patch> patches) {
+        for (Patch patch : patches) {
+            for (String className : patch.getTargetClasses()) {
+                List<Patch> list = targets.get(className);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    targets.put(className, list);
+                }
+                list.add(patch);
+            }
+        }
+    }
+
+    public static void premain(String options, Instrumentation inst) {
+        List<Patch> patches = PatchRegistry.getAll();
+        boolean stats = false;
+        if (options != null) {
+            for (String option : options.split(",")) {
+                if ("stats".equals(option)) {
+                    stats = true;
+                } else if (option.startsWith("patches=")) {
+                    List<String> names = Arrays.asList(option.substring("patches=".length()).split("\\+"));
+                    patches = new ArrayList<>();
+                    for (Patch patch : PatchRegistry.getAll()) {
+                        if (names.contains(patch.getName())) patches.add(patch);
+                    }
+                }
+            }
+        }
+
+        final PatchAgent agent = new PatchAgent(patches);
+        inst.addTransformer(agent);
+
+        if (stats) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    System.err.println(agent.getStatistics());
+                }
+            }));
+        }
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        long start = System.nanoTime();
+        List<Patch> patches = className != null ? targets.get(className) : null;
+        try {
+            if (patches == null) return null;
+            return patch(className, patches, classfileBuffer);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            classes.incrementAndGet();
+            nanos.addAndGet(elapsed);
+            if (patches != null) patchNanos.addAndGet(elapsed);
+        }
+    }
+
+    private byte[] patch(String className, List<Patch> patches, byte[] classfileBuffer) {
+        try {
+            ClassGen classGen = new ClassGen(new ClassParser(new ByteArrayInputStream(classfileBuffer), className + ".class").parse());
+            boolean modified = false;
+            for (Patch patch : patches) {
+                try {
+                    patch.transform(classGen);
+                    modified = true;
+                } catch (AlreadyPatchedException ignore) {
+                    //the jar was patched on disk
+                }
+            }
+            if (!modified) return null;
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(classfileBuffer.length + 1024);
+            classGen.getJavaClass().dump(baos);
+            patched.incrementAndGet();
+            return baos.toByteArray();
+        } catch (Throwable t) {
+            //a broken patch must not take the game down with it, the class is loaded as it is
+            System.err.println("[PatchAgent] Patching " + className + " failed: " + t);
+            return null;
+        }
+    }
+
+    public String getStatistics() {
+        return "[PatchAgent] " + classes.get() + " classes seen, " + patched.get() + " patched, "
+                + (nanos.get() / 1000) + " us in the agent (" + (patchNanos.get() / 1000) + " us patching, "
+                + (classes.get() > 0 ? (nanos.get() - patchNanos.get()) / classes.get() : 0) + " ns per rejected class)";
+    }
+}
@@ -0,0 +1,223 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+// A cache of patched jars, enabled with -Dobsidiancore.launcher.bcp.cache=<dir>.
+// An entry is keyed by the SHA-256 of the input jar, the set of patches and PATCHER_VERSION,
+// so installing the same library again only costs a hash and a hard link (or a copy).
+// Every entry is a <key>.jar with a <key>.properties record of what it was made from
+// and the <key>.bcpdelta that turns it back into the input jar (see ReverseDelta).
+// The hash of the patched jar is taken from its delta, an entry is checked by the size and modification time of its jar.
+//
+// Next to every jar the patcher wrote (or found already patched) there is a small <jar>.bcp sidecar.
+// It records the patches and the size and modification time of the jar, so the next check doesn't have to open the jar.
+
+public class PatchCache {
+    //must be changed whenever a patch changes what it writes
+    public static final String PATCHER_VERSION = "1";
+
+    private static final String SIDECAR_SUFFIX = ".bcp";
+
+    private final File dir;
+
+    public PatchCache(File dir) {
+        this.dir = dir;
+    }
+
+    //returns null if the cache isn't enabled
+    public static PatchCache createFromProperties() {
+        String dir = System.getProperty("obsidiancore.launcher.bcp.cache");
+        if (dir == null || dir.isEmpty()) return null;
+        return new PatchCache(new File(dir));
+    }
+
+    public static String getKey(String jarSha256, Collection<String> patches) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(jarSha256).append('\n');
+        for (String patch : new TreeSet<>(patches)) {
+            sb.append(patch).append('\n');
+        }
+        sb.append(PATCHER_VERSION);
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e); //every Java has SHA-256 and UTF-8
+        }
+    }
+
+    //Returns the cached jar for the key or null, an entry that doesn't match its record is removed.
+    //The delta of the entry has to lead back to the given original, a jar that was already patched
+    //before has a delta that leads further back than the jar itself.
+    public File lookup(String key, String originalSha256) throws IOException {
+        File jar = new File(dir, key + ".jar");
+        File record = new File(dir, key + ".properties");
+        File delta = new File(dir, key + ReverseDelta.SUFFIX);
+        if (!jar.isFile() || !record.isFile() || !delta.isFile()) return null;
+
+        Properties p = load(record);
+        if (!String.valueOf(jar.length()).equals(p.getProperty("patchedSize"))
+                || !String.valueOf(jar.lastModified()).equals(p.getProperty("patchedLastModified"))) {
+            jar.delete();
+            record.delete();
+            delta.delete();
+            return null;
+        }
+        if (!originalSha256.equals(p.getProperty("deltaOriginalSha256"))) return null;
+        return jar;
+    }
+
+    //replaces the library and its delta with the cached ones
+    public static void install(File cached, File libFile) throws IOException {
+        String key = cached.getName().substring(0, cached.getName().length() - ".jar".length());
+        linkInto(new File(cached.getParentFile(), key + ReverseDelta.SUFFIX), ReverseDelta.getFile(libFile));
+        linkInto(cached, libFile);
+    }
+
+    public void store(String key, File patchedJar, String originalSha256, Collection<String> patches) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+
+        File jar = new File(dir, key + ".jar");
+        ReverseDelta delta = ReverseDelta.read(ReverseDelta.getFile(patchedJar));
+        linkInto(ReverseDelta.getFile(patchedJar), new File(dir, key + ReverseDelta.SUFFIX));
+        linkInto(patchedJar, jar);
+
+        Properties p = new Properties();
+        p.setProperty("originalSha256", originalSha256);
+        p.setProperty("patchedSha256", delta.getPatchedSha256());
+        p.setProperty("patchedSize", String.valueOf(jar.length()));
+        p.setProperty("patchedLastModified", String.valueOf(jar.lastModified()));
+        p.setProperty("deltaOriginalSha256", delta.getOriginalSha256());
+        p.setProperty("patches", join(new TreeSet<>(patches)));
+        p.setProperty("patcherVersion", PATCHER_VERSION);
+        p.setProperty("source", patchedJar.getName());
+        save(p, new File(dir, key + ".properties"));
+    }
+
+    //the target is replaced by a link to the file (or a copy), files are only ever renamed over, so they can share the content
+    private static void linkInto(File file, File target) throws IOException {
+        Path tmp = Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(), target.getName(), ".tmp");
+        try {
+            Files.delete(tmp);
+            JarRewriter.linkOrCopy(file.toPath(), tmp);
+            JarRewriter.replaceFile(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    //true if the sidecar says that the jar, as it is now, has all the patches
+    public static boolean isPatched(File libFile, Collection<String> patches) {
+        File sidecar = new File(libFile.getPath() + SIDECAR_SUFFIX);
+        if (!sidecar.isFile()) return false;
+        try {
+            Properties p = load(sidecar);
+            return String.valueOf(libFile.length()).equals(p.getProperty("size"))
+                    && String.valueOf(libFile.lastModified()).equals(p.getProperty("lastModified"))
+                    && PATCHER_VERSION.equals(p.getProperty("patcherVersion"))
+                    && split(p.getProperty("patches", "")).containsAll(patches);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void writeSidecar(File libFile, Collection<String> patches) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("patches", join(new TreeSet<>(patches)));
+        p.setProperty("size", String.valueOf(libFile.length()));
+        p.setProperty("lastModified", String.valueOf(libFile.lastModified()));
+        p.setProperty("patcherVersion", PATCHER_VERSION);
+        save(p, new File(libFile.getPath() + SIDECAR_SUFFIX));
+    }
+
+    public static void deleteSidecar(File libFile) throws IOException {
+        Files.deleteIfExists(new File(libFile.getPath() + SIDECAR_SUFFIX).toPath());
+    }
+
+    public static String sha256(File file) throws IOException {
+        return digest(file, "SHA-256")[0];
+    }
+
+    //the hex digests of the file for all the algorithms, read once
+    public static String[] digest(File file, String... algorithms) throws IOException {
+        MessageDigest[] mds = new MessageDigest[algorithms.length];
+        try {
+            for (int i = 0; i < algorithms.length; i++) {
+                mds[i] = MessageDigest.getInstance(algorithms[i]);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); //every Java has SHA-1 and SHA-256
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 1024);
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                for (MessageDigest md : mds) {
+                    buf.mark();
+                    md.update(buf);
+                    buf.reset();
+                }
+                buf.clear();
+            }
+        }
+        String[] hex = new String[mds.length];
+        for (int i = 0; i < mds.length; i++) {
+            hex[i] = toHex(mds[i].digest());
+        }
+        return hex;
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = hex[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = hex[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static String join(Collection<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String v : values) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(v);
+        }
+        return sb.toString();
+    }
+
+    private static List<String> split(String value) {
+        return value.isEmpty() ? new ArrayList<String>() : Arrays.asList(value.split(","));
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties p = new Properties();
+        try (InputStream is = new FileInputStream(file)) {
+            p.load(is);
+        }
+        return p;
+    }
+
+    private static void save(Properties p, File file) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            p.store(os, null);
+        }
+    }
+}
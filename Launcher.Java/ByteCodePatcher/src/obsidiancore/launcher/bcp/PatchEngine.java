@@ -0,0 +1,112 @@
+package obsidiancore.launcher.bcp;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Applies patches to a jar with a single walk over its entries.
+// Every class that any of the patches targets is parsed once, given to all of them in turn and written once.
+// The jar itself is only written by the caller (JarRewriter.commit), so nothing is written if a patch failed.
+
+public class PatchEngine {
+    private PatchEngine() {
+    }
+
+    //returns the outcome for every patch: null if it was applied, otherwise the exception (AlreadyPatchedException if it wasn't needed)
+    public static Map<Patch, Exception> apply(JarRewriter jar, List<Patch> patches) {
+        Map<Patch, Exception> results = new LinkedHashMap<>();
+        List<Patch> active = new ArrayList<>();
+        for (Patch patch : patches) {
+            if (results.containsKey(patch)) continue;
+            try {
+                patch.beforeClasses(jar);
+                results.put(patch, null);
+                active.add(patch);
+            } catch (Exception e) {
+                results.put(patch, e);
+            }
+        }
+
+        //entry name -> patches that want it
+        Map<String, List<Patch>> targets = new HashMap<>();
+        for (Patch patch : active) {
+            for (String className : patch.getTargetClasses()) {
+                String entryName = className + ".class";
+                List<Patch> list = targets.get(entryName);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    targets.put(entryName, list);
+                }
+                list.add(patch);
+            }
+        }
+
+        Map<Patch, Integer> classesFound = new HashMap<>();
+        for (ZipDirectory.Entry entry : jar.getDirectory().getEntries()) {
+            List<Patch> interested = targets.get(entry.getName());
+            if (interested == null) continue;
+
+            try {
+                transformClass(jar, entry.getName(), interested, results);
+            } catch (Exception e) {
+                for (Patch patch : interested) {
+                    if (results.get(patch) == null) results.put(patch, e);
+                }
+            }
+            for (Patch patch : interested) {
+                Integer n = classesFound.get(patch);
+                classesFound.put(patch, n == null ? 1 : n + 1);
+            }
+        }
+
+        for (Patch patch : active) {
+            if (results.get(patch) != null) continue;
+            Integer found = classesFound.get(patch);
+            if (found == null || found < patch.getTargetClasses().length) {
+                results.put(patch, new PatchException("Couldn't find all the target classes of " + patch.getName()));
+                continue;
+            }
+            try {
+                patch.afterClasses(jar);
+            } catch (Exception e) {
+                results.put(patch, e);
+            }
+        }
+        return results;
+    }
+
+    private static void transformClass(JarRewriter jar, String entryName, List<Patch> patches, Map<Patch, Exception> results) throws Exception {
+        byte[] data = jar.read(entryName);
+        JavaClass classIn = new ClassParser(new ByteArrayInputStream(data), entryName).parse();
+        ClassGen classGen = new ClassGen(classIn);
+
+        boolean modified = false;
+        for (Patch patch : patches) {
+            if (results.get(patch) != null) continue;
+            try {
+                for (String method : patch.getTargetMethods()) {
+                    if (Shared.getMethod(classGen.getMethods(), method) == null)
+                        throw new PatchException("Couldn't find method '" + method + "' in " + classGen.getClassName());
+                }
+                patch.transform(classGen);
+                modified = true;
+            } catch (Exception e) {
+                results.put(patch, e);
+            }
+        }
+
+        if (modified) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length + 1024);
+            classGen.getJavaClass().dump(baos);
+            jar.replace(entryName, baos.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package obsidiancore.launcher.bcp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+public class PatchRegistry {
+    private static Map<String, Patch> patches;
+
+    private PatchRegistry() {
+    }
+
+    private static synchronized Map<String, Patch> getPatches() {
+        if (patches == null) {
+            Map<String, Patch> map = new LinkedHashMap<>();
+            for (Patch patch : ServiceLoader.load(Patch.class, PatchRegistry.class.getClassLoader())) {
+                map.put(patch.getName(), patch);
+            }
+            patches = map;
+        }
+        return patches;
+    }
+
+    public static Patch get(String name) throws PatchException {
+        Patch patch = getPatches().get(name);
+        if (patch == null) throw new PatchException("Unknown patch: " + name);
+        return patch;
+    }
+
+    public static List<Patch> getAll() {
+        return new ArrayList<>(getPatches().values());
+    }
+}
@@ -1,21 +1,39 @@
 package obsidiancore.launcher.bcp;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Usage: Patcher <patch> <jar>
+//        Patcher --batch <job file or - for stdin>   (see BatchPatcher)
+//        Patcher --unpatch <jar>...                  (see Unpatcher)
+//        Patcher --scan <libraries dir> [--apply]    (see LibraryScanner, --apply patches what was found)
+// The helper daemon (obsidiancore.launcher.helper.Helper) calls run() for its "patch" requests.
 
 public class Patcher {
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) System.exit(1);
-        File libFile = new File(args[1]).getCanonicalFile();
-        if (!libFile.isFile()) System.exit(1);
+        System.exit(run(args, System.in, System.out));
+    }
 
-        try {
-            if ("CoreModManager_Sort_Patch".equals(args[0]))
-                CoreModManager_Sort_Patch.patchSort(libFile);
-            else if ("SecureJarHandler_ManifestEntryVerifier_Patch".equals((args[0])))
-                SecureJarHandler_ManifestEntryVerifier_Patch.patchSun(libFile);
-            else
-                System.exit(1);
-        } catch (AlreadyPatchedException ignore) {
+    //returns the exit code, in is read for "--batch -"
+    public static int run(String[] args, InputStream in, PrintStream out) throws IOException {
+        if (args.length == 2 && "--batch".equals(args[0])) {
+            return BatchPatcher.run(args[1], in, out) ? 0 : 1;
+        }
+        if ((args.length == 2 || (args.length == 3 && "--apply".equals(args[2]))) && "--scan".equals(args[0])) {
+            return LibraryScanner.run(args[1], args.length == 3, out) ? 0 : 1;
         }
+        if (args.length >= 2 && "--unpatch".equals(args[0])) {
+            return Unpatcher.run(Arrays.asList(args).subList(1, args.length), out) ? 0 : 1;
+        }
+
+        if (args.length != 2) return 1;
+
+        //a batch of one, an already patched jar isn't an error
+        List<BatchPatcher.Job> jobs = Collections.singletonList(new BatchPatcher.Job(args[0], args[1]));
+        return BatchPatcher.run(jobs, out) ? 0 : 1;
     }
 }
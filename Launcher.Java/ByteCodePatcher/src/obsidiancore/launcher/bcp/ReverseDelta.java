@@ -0,0 +1,245 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// The backup of a patched jar: what it takes to turn the patched jar back into the original one.
+// The original is rebuilt in file order from copies of the unchanged records of the patched jar
+// and from the stored original bytes of everything else: the records of the replaced and deleted entries,
+// anything before the first record and the original central directory with the end record.
+// It's kept next to the jar as <jar>.bcpdelta (gzip compressed) and is only valid for the patched jar
+// with the recorded SHA-256. The SHA-1 and SHA-256 of the original are checked after it's rebuilt.
+
+public class ReverseDelta {
+    public static final String SUFFIX = ".bcpdelta";
+
+    private static final int MAGIC = 0x42435044; //"BCPD"
+    private static final int VERSION = 1;
+
+    private final String originalSha1;
+    private final String originalSha256;
+    private final long originalSize;
+    private final List<Op> ops;
+    private String patchedSha256;
+
+    ReverseDelta(String originalSha1, String originalSha256, long originalSize, List<Op> ops) {
+        this.originalSha1 = originalSha1;
+        this.originalSha256 = originalSha256;
+        this.originalSize = originalSize;
+        this.ops = ops;
+    }
+
+    public static File getFile(File jar) {
+        return new File(jar.getPath() + SUFFIX);
+    }
+
+    //returns the delta of the jar as it is now or null if there is none, a delta for some other content of the jar is ignored
+    public static ReverseDelta readFor(File jar, String jarSha256) {
+        File file = getFile(jar);
+        if (!file.isFile()) return null;
+        try {
+            ReverseDelta delta = read(file);
+            return jarSha256.equals(delta.patchedSha256) ? delta : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static ReverseDelta read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Not a patch delta: " + file);
+            String sha1 = in.readUTF();
+            String sha256 = in.readUTF();
+            String patchedSha256 = in.readUTF();
+            long size = in.readLong();
+
+            int count = in.readInt();
+            List<Op> ops = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (in.readBoolean()) {
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    ops.add(new Op(data));
+                } else {
+                    ops.add(new Op(in.readLong(), in.readLong()));
+                }
+            }
+
+            ReverseDelta delta = new ReverseDelta(sha1, sha256, size, ops);
+            delta.patchedSha256 = patchedSha256;
+            return delta;
+        }
+    }
+
+    //written next to the target and renamed over it
+    public void write(File file) throws IOException {
+        Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile()))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(originalSha1);
+                out.writeUTF(originalSha256);
+                out.writeUTF(patchedSha256);
+                out.writeLong(originalSize);
+
+                out.writeInt(ops.size());
+                for (Op op : ops) {
+                    out.writeBoolean(op.data != null);
+                    if (op.data != null) {
+                        out.writeInt(op.data.length);
+                        out.write(op.data);
+                    } else {
+                        out.writeLong(op.offset);
+                        out.writeLong(op.length);
+                    }
+                }
+            }
+            JarRewriter.replaceFile(tmp, file);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    //For a jar that is patched again: this delta leads from the jar as it is now to the original,
+    //recordOps lead from the newly patched jar to the jar as it is now (by the offsets of its records).
+    //Every copy of this delta is a whole record of the jar as it is now, so it's replaced by what that record became.
+    ReverseDelta then(Map<Long, Op> recordOps) throws IOException {
+        List<Op> combined = new ArrayList<>(ops.size());
+        for (Op op : ops) {
+            if (op.data != null) {
+                combined.add(op);
+                continue;
+            }
+            Op next = recordOps.get(op.offset);
+            if (next == null || next.length != op.length) throw new IOException("The patch delta doesn't match the jar");
+            combined.add(next);
+        }
+        return new ReverseDelta(originalSha1, originalSha256, originalSize, combined);
+    }
+
+    //rebuilds the original jar in place of the patched one and removes the delta
+    public RewriteStats restore(File jar) throws IOException, PatchException {
+        long startNanos = System.nanoTime();
+        if (!PatchCache.sha256(jar).equals(patchedSha256)) throw new PatchException("The jar was changed after it was patched");
+
+        long copied = 0;
+        Path tmp = Files.createTempFile(jar.getAbsoluteFile().getParentFile().toPath(), jar.getName(), ".tmp");
+        try {
+            long pos = 0;
+            try (FileChannel in = FileChannel.open(jar.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long inSize = in.size();
+                for (Op op : ops) {
+                    if (op.data != null) {
+                        ByteBuffer buf = ByteBuffer.wrap(op.data);
+                        while (buf.hasRemaining()) {
+                            pos += out.write(buf, pos);
+                        }
+                        continue;
+                    }
+
+                    if (op.offset < 0 || op.offset + op.length > inSize) throw new PatchException("The patch delta doesn't match the jar");
+                    out.position(pos);
+                    long done = 0;
+                    while (done < op.length) {
+                        long n = in.transferTo(op.offset + done, op.length - done, out);
+                        if (n <= 0) throw new IOException("Unexpected end of " + jar);
+                        done += n;
+                    }
+                    pos += op.length;
+                    copied += op.length;
+                }
+                out.force(false);
+            }
+
+            String[] hashes = PatchCache.digest(tmp.toFile(), "SHA-1", "SHA-256");
+            if (pos != originalSize || !hashes[0].equals(originalSha1) || !hashes[1].equals(originalSha256))
+                throw new PatchException("The rebuilt jar doesn't match the original");
+
+            JarRewriter.replaceFile(tmp, jar);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        Files.deleteIfExists(getFile(jar).toPath());
+        PatchCache.deleteSidecar(jar);
+        //the patched jar is read twice, for its hash and for the copies, the rebuilt one once for the hashes
+        return new RewriteStats(jar, jar.length() + copied + originalSize, originalSize, System.nanoTime() - startNanos);
+    }
+
+    void setPatchedSha256(String patchedSha256) {
+        this.patchedSha256 = patchedSha256;
+    }
+
+    public String getOriginalSha1() {
+        return originalSha1;
+    }
+
+    public String getOriginalSha256() {
+        return originalSha256;
+    }
+
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    public String getPatchedSha256() {
+        return patchedSha256;
+    }
+
+    //the number of original bytes stored in the delta
+    public long getStoredBytes() {
+        long n = 0;
+        for (Op op : ops) {
+            if (op.data != null) n += op.data.length;
+        }
+        return n;
+    }
+
+    //the offsets of the records the patcher didn't change, every other record of the patched jar was written by it
+    public Set<Long> getCopiedOffsets() {
+        Set<Long> offsets = new HashSet<>();
+        for (Op op : ops) {
+            if (op.data == null) offsets.add(op.offset);
+        }
+        return offsets;
+    }
+
+    //either a copy from the patched jar or original bytes
+    static class Op {
+        final long offset;
+        final long length;
+        final byte[] data;
+
+        Op(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+            this.data = null;
+        }
+
+        Op(byte[] data) {
+            this.offset = -1;
+            this.length = data.length;
+            this.data = data;
+        }
+    }
+}
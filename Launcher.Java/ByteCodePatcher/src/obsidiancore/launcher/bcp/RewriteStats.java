@@ -0,0 +1,38 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.File;
+
+public class RewriteStats {
+    private final File file;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+
+    public RewriteStats(File file, long bytesRead, long bytesWritten, long elapsedNanos) {
+        this.file = file;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return file.getName() + ": read " + bytesRead + " bytes, wrote " + bytesWritten + " bytes in " + (elapsedNanos / 1000000) + " ms";
+    }
+}
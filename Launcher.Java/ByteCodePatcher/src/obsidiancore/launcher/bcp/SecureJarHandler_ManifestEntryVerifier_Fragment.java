@@ -0,0 +1,14 @@
+package obsidiancore.launcher.bcp;
+
+import java.lang.reflect.Field;
+
+// The code that SecureJarHandler_ManifestEntryVerifier_Patch appends to the static initializer, compiled into a fragment by FragmentCompiler.
+// JV stands for the field of the patched class.
+
+class SecureJarHandler_ManifestEntryVerifier_Fragment {
+    static Field JV;
+
+    static void clinitEnd() {
+        JV = null;
+    }
+}
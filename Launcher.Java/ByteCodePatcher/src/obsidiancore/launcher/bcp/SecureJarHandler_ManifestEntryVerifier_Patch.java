@@ -1,88 +1,76 @@
 package obsidiancore.launcher.bcp;
 
+import org.apache.bcel.Const;
 import org.apache.bcel.classfile.*;
-import org.apache.bcel.generic.*;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.reflect.Field;
-import java.net.URI;
-import java.nio.file.*;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.List;
 
 // So, someone thought it was a good idea to use sun.security.util.ManifestEntryVerifier
 // which was removed from a newer version of Java 8 (as the documentation around the sun package clearly states can happen).
 // This code nulls a static field in the class that does the "unspeakable thing" to prevent it from crashing.
+// The code that does it is merged from a fragment (see SecureJarHandler_ManifestEntryVerifier_Fragment).
 
-public class SecureJarHandler_ManifestEntryVerifier_Patch {
+public class SecureJarHandler_ManifestEntryVerifier_Patch extends AbstractPatch {
     private static final String PATCH_MARK = "obsidiancore.launcher.bcp.sunpatch";
+    private static final String VERIFIER = "ManifestEntryVerifier";
 
-    private SecureJarHandler_ManifestEntryVerifier_Patch() {
+    @Override
+    public String[] getTargetClasses() {
+        return new String[]{"cpw/mods/modlauncher/SecureJarHandler"};
     }
 
-    public static void patchSun(File libFile) throws Exception {
-        //create backup
-        Path copyPath = new File(libFile.getPath() + "~").toPath();
-        if (!Files.exists(copyPath))
-            Files.copy(libFile.toPath(), copyPath, StandardCopyOption.REPLACE_EXISTING);
+    @Override
+    public String[] getTargetMethods() {
+        return new String[]{"<clinit>"};
+    }
 
-        URI uri = URI.create("jar:" + libFile.toURI());
-        try (FileSystem zipfs = FileSystems.newFileSystem(uri, new HashMap<String, String>())) {
-            //patch
-            Path filePath = zipfs.getPath("cpw/mods/modlauncher/SecureJarHandler.class");
-            byte[] patchedFile;
-            try (InputStream is = Files.newInputStream(filePath)) {
-                patchedFile = createPatchedClass(is, filePath.toString());
-            }
+    @Override
+    public boolean needsPatch(ClassSummary summary) {
+        ConstantPool cp = summary.getConstantPool();
+        if (isPatched(cp)) return false;
 
-            //overwrite patched file
-            try (OutputStream os = Files.newOutputStream(filePath)) {
-                os.write(patchedFile);
-            }
+        //the class is named in a string (it's used through reflection) or in a class reference, both end up in a UTF-8 constant
+        for (Constant c : cp.getConstantPool()) {
+            if (c instanceof ConstantUtf8 && ((ConstantUtf8) c).getBytes().contains(VERIFIER)) return true;
         }
+        return false;
     }
 
-    private static byte[] createPatchedClass(InputStream inputStream, String fileName) throws Exception {
-        //load the unmodified class
-        ClassParser parser = new ClassParser(inputStream, fileName);
-        JavaClass classIn = parser.parse();
-
-        ClassGen classGen = new ClassGen(classIn);
+    @Override
+    public void transform(ClassGen classGen) throws Exception {
         ConstantPoolGen cp = classGen.getConstantPool();
 
         //check if already patched
-        for (int i = 0; i < cp.getSize(); i++) {
-            Constant c = cp.getConstant(i);
+        if (isPatched(cp.getConstantPool())) throw new AlreadyPatchedException();
+
+        Method origMethod = Shared.getMethod(classGen.getMethods(), "<clinit>");
+        if (origMethod == null || origMethod.getCode() == null) throw new PatchException("Couldn't patch '<clinit>'.");
+        byte[] code = origMethod.getCode().getCode();
+        List<Integer> offsets = Shared.getInstructionOffsets(code);
+        int last = offsets.get(offsets.size() - 1);
+        if ((code[last] & 0xff) != Const.RETURN) throw new PatchException("Couldn't patch '<clinit>'.");
+
+        //the return at the end is replaced with the fragment, which ends with its own return
+        Fragment fragment = Fragment.get("SecureJarHandler_ManifestEntryVerifier_Fragment.clinitEnd");
+        byte[] tail = fragment.getCode(classGen);
+        byte[] newCode = Arrays.copyOf(code, last + tail.length);
+        System.arraycopy(tail, 0, newCode, last, tail.length);
+        classGen.replaceMethod(origMethod, Shared.replaceCode(origMethod, cp, newCode, fragment.getMaxStack()));
+
+        cp.addString(PATCH_MARK);
+    }
+
+    private static boolean isPatched(ConstantPool cp) {
+        for (Constant c : cp.getConstantPool()) { //has empty slots, getConstant() would throw for them
             if (c instanceof ConstantString) {
                 ConstantString cs = (ConstantString) c;
-                String val = (String) cs.getConstantValue(cp.getConstantPool());
-                if (PATCH_MARK.equals(val)) throw new AlreadyPatchedException();
+                String val = (String) cs.getConstantValue(cp);
+                if (PATCH_MARK.equals(val)) return true;
             }
         }
-
-        Method origMethod = Shared.getMethod(classIn.getMethods(), "<clinit>");
-        MethodGen methodGen = new MethodGen(origMethod, classIn.getClassName(), cp);
-
-        InstructionList il = methodGen.getInstructionList();
-        il.delete(il.getInstructions()[il.size() - 1]);
-
-        InstructionFactory f = new InstructionFactory(cp);
-        il.append(new ACONST_NULL());
-        il.append(f.createPutStatic(classIn.getClassName(), "JV", Type.getType(Field.class)));
-        il.append(new RETURN());
-
-        Method newMethod = methodGen.getMethod();
-
-        classGen.removeMethod(origMethod);
-        classGen.addMethod(newMethod);
-
-        cp.addString(PATCH_MARK);
-
-        //write the modified class
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        classGen.getJavaClass().dump(baos);
-        return baos.toByteArray();
+        return false;
     }
 }
@@ -1,14 +1,17 @@
 package obsidiancore.launcher.bcp;
 
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.ClassGen;
-import org.apache.bcel.generic.InstructionList;
-import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.ConstantPoolGen;
 
-import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// The patches work on the bytes of the Code attribute instead of with MethodGen and InstructionList:
+// org.apache.bcel.generic is a few hundred classes and loading them takes longer than the patching itself.
 
 public class Shared {
     private Shared() {
@@ -23,40 +26,52 @@ public class Shared {
         return null;
     }
 
-    public static Method copyMethod(ClassGen destClass, MethodGen srcMethod) {
-        InstructionList il = srcMethod.getInstructionList();
-        il.replaceConstantPool(srcMethod.getConstantPool(), destClass.getConstantPool());
-
-        MethodGen methodGen = new MethodGen(
-                srcMethod.getAccessFlags(),
-                srcMethod.getReturnType(),
-                srcMethod.getArgumentTypes(),
-                srcMethod.getArgumentNames(),
-                srcMethod.getName(),
-                destClass.getClassName(),
-                il,
-                destClass.getConstantPool());
-        methodGen.setMaxLocals(srcMethod.getMaxLocals());
-        methodGen.setMaxStack(srcMethod.getMaxStack());
-
-        Method newMethod = methodGen.getMethod();
-        il.dispose();
-
-        destClass.addMethod(newMethod);
-        return newMethod;
+    //the offsets of all the instructions in the bytecode
+    public static List<Integer> getInstructionOffsets(byte[] code) {
+        List<Integer> result = new ArrayList<>();
+        int pc = 0;
+        while (pc < code.length) {
+            result.add(pc);
+            int op = code[pc] & 0xff;
+            if (op == Const.TABLESWITCH || op == Const.LOOKUPSWITCH) {
+                int p = (pc + 4) & ~3; //the operands are aligned to 4 bytes
+                if (op == Const.TABLESWITCH) pc = p + 12 + (readInt(code, p + 8) - readInt(code, p + 4) + 1) * 4;
+                else pc = p + 8 + readInt(code, p + 4) * 8;
+            } else if (op == Const.WIDE) {
+                pc += (code[pc + 1] & 0xff) == Const.IINC ? 6 : 4;
+            } else {
+                int operandBytes = Const.getNoOfOperands(op);
+                if (operandBytes < 0) throw new ClassFormatException("Invalid opcode " + op + " at " + pc);
+                pc += 1 + operandBytes;
+            }
+        }
+        return result;
+    }
+
+    static int readU2(byte[] b, int pos) {
+        return ((b[pos] & 0xff) << 8) | (b[pos + 1] & 0xff);
+    }
+
+    static void writeU2(byte[] b, int pos, int value) {
+        b[pos] = (byte) (value >> 8);
+        b[pos + 1] = (byte) value;
+    }
+
+    private static int readInt(byte[] b, int pos) {
+        return ((b[pos] & 0xff) << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8) | (b[pos + 3] & 0xff);
     }
 
-    public static void deleteDir(Path metaPath) throws IOException {
-        if (Files.isDirectory(metaPath)) {
-            try (DirectoryStream<Path> dirStr = Files.newDirectoryStream(metaPath)) {
-                for (Path p : dirStr) {
-                    if (Files.isDirectory(p))
-                        deleteDir(p);
-                    else
-                        Files.delete(p);
-                }
+    //A copy of the method with new bytecode, the exception table and the attributes of the code are kept,
+    //so the new code must leave every offset they refer to where it was.
+    public static Method replaceCode(Method method, ConstantPoolGen cp, byte[] code, int maxStack) {
+        Method copy = method.copy(cp.getConstantPool());
+        for (Attribute a : copy.getAttributes()) {
+            if (a instanceof Code) {
+                Code c = (Code) a;
+                c.setCode(code);
+                c.setMaxStack(Math.max(c.getMaxStack(), maxStack));
             }
-            Files.delete(metaPath);
         }
+        return copy;
     }
 }
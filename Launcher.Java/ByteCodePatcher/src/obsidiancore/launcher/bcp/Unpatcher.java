@@ -0,0 +1,48 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+
+// Restores the original jars from the ReverseDelta next to them.
+// For every jar a line "<status>\t<jar>\t<ms>\t<message>" is printed, the status is unpatched, not-patched or failed.
+
+public class Unpatcher {
+    public static final String UNPATCHED = "unpatched";
+    public static final String NOT_PATCHED = "not-patched";
+    public static final String FAILED = "failed";
+
+    private Unpatcher() {
+    }
+
+    //returns true if no jar failed
+    public static boolean run(List<String> jars, PrintStream out) {
+        boolean ok = true;
+        for (String jar : jars) {
+            long startNanos = System.nanoTime();
+            String status, message;
+            try {
+                File libFile = new File(jar);
+                File deltaFile = ReverseDelta.getFile(libFile);
+                if (!libFile.isFile()) {
+                    status = FAILED;
+                    message = "File not found";
+                } else if (!deltaFile.isFile()) {
+                    status = NOT_PATCHED;
+                    message = "";
+                } else {
+                    ReverseDelta delta = ReverseDelta.read(deltaFile);
+                    status = UNPATCHED;
+                    message = delta.restore(libFile) + ", restored SHA-1 " + delta.getOriginalSha1();
+                }
+            } catch (Exception e) {
+                status = FAILED;
+                message = e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName();
+            }
+            if (FAILED.equals(status)) ok = false;
+            out.println(status + "\t" + jar + "\t" + ((System.nanoTime() - startNanos) / 1000000) + "\t" + message.replace('\t', ' ').replace('\n', ' '));
+        }
+        out.flush();
+        return ok;
+    }
+}
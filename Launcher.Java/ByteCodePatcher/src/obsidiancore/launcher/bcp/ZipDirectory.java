@@ -0,0 +1,265 @@
+package obsidiancore.launcher.bcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Reads the central directory of a zip file without touching the entry data,
+// so single entries can be read and the rest copied as raw bytes (see JarRewriter).
+// ZIP64 archives are not supported, no library jar is anywhere near that big.
+
+public class ZipDirectory {
+    static final int LOCAL_HEADER_SIG = 0x04034b50;
+    static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    static final int END_SIG = 0x06054b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset CP437 = Charset.forName("IBM437");
+
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final byte[] end; //the end of central directory record including the comment
+    private long bytesRead;
+
+    private ZipDirectory(List<Entry> entries, long centralDirectoryOffset, long centralDirectorySize, byte[] end, long bytesRead) {
+        this.entries = java.util.Collections.unmodifiableList(entries); //not our Collections
+        this.byName = new HashMap<>(entries.size() * 2);
+        for (Entry e : entries) {
+            byName.put(e.name, e);
+        }
+        this.centralDirectoryOffset = centralDirectoryOffset;
+        this.centralDirectorySize = centralDirectorySize;
+        this.end = end;
+        this.bytesRead = bytesRead;
+    }
+
+    public static ZipDirectory read(FileChannel channel) throws IOException {
+        return read(channel, (byte[][]) null);
+    }
+
+    //Only reads the entries with the given names, the names of the others aren't even decoded.
+    //Meant for looking for a few classes in many jars (see LibraryScanner), the names must be ASCII.
+    public static ZipDirectory read(FileChannel channel, Collection<String> names) throws IOException {
+        byte[][] filter = null;
+        if (names != null) {
+            filter = new byte[names.size()][];
+            int i = 0;
+            for (String name : names) {
+                filter[i++] = name.getBytes(UTF8);
+            }
+        }
+        return read(channel, filter);
+    }
+
+    private static ZipDirectory read(FileChannel channel, byte[][] filter) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_SIZE) throw new ZipException("Not a zip file");
+
+        //the end record is followed by a comment of up to 64K, but jars hardly ever have one
+        int tailSize = END_SIZE;
+        ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+        if (tail.getInt(0) != END_SIG || tail.getShort(20) != 0) {
+            tailSize = (int) Math.min(fileSize, END_SIZE + 0xffff);
+            tail = readFully(channel, fileSize - tailSize, tailSize);
+        }
+        int endPos = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG && i + END_SIZE + (tail.getShort(i + 20) & 0xffff) == tailSize) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos < 0) throw new ZipException("End of central directory not found");
+
+        int count = tail.getShort(endPos + 10) & 0xffff;
+        long cdSize = tail.getInt(endPos + 12) & 0xffffffffL;
+        long cdOffset = tail.getInt(endPos + 16) & 0xffffffffL;
+        if (count == 0xffff || cdSize == 0xffffffffL || cdOffset == 0xffffffffL)
+            throw new ZipException("ZIP64 archives are not supported");
+        if (cdOffset + cdSize > fileSize - tailSize + endPos) throw new ZipException("Invalid central directory");
+
+        byte[] end = new byte[tailSize - endPos];
+        tail.position(endPos);
+        tail.get(end);
+
+        ByteBuffer cd = readFully(channel, cdOffset, (int) cdSize);
+        List<Entry> entries = new ArrayList<>(filter == null ? count : filter.length);
+        int pos = 0;
+        while (pos + CENTRAL_HEADER_SIZE <= cdSize) {
+            if (cd.getInt(pos) != CENTRAL_HEADER_SIG) throw new ZipException("Invalid central directory header at " + (cdOffset + pos));
+            int nameLen = cd.getShort(pos + 28) & 0xffff;
+            int extraLen = cd.getShort(pos + 30) & 0xffff;
+            int commentLen = cd.getShort(pos + 32) & 0xffff;
+            int recordLen = CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen;
+            if (pos + recordLen > cdSize) throw new ZipException("Truncated central directory");
+            if (filter != null && !matches(cd, pos + CENTRAL_HEADER_SIZE, nameLen, filter)) {
+                pos += recordLen;
+                continue;
+            }
+
+            Entry e = new Entry();
+            e.flags = cd.getShort(pos + 8) & 0xffff;
+            e.method = cd.getShort(pos + 10) & 0xffff;
+            e.crc = cd.getInt(pos + 16) & 0xffffffffL;
+            e.compressedSize = cd.getInt(pos + 20) & 0xffffffffL;
+            e.size = cd.getInt(pos + 24) & 0xffffffffL;
+            e.localHeaderOffset = cd.getInt(pos + 42) & 0xffffffffL;
+            if (e.compressedSize == 0xffffffffL || e.size == 0xffffffffL || e.localHeaderOffset == 0xffffffffL)
+                throw new ZipException("ZIP64 archives are not supported");
+
+            byte[] nameBytes = new byte[nameLen];
+            cd.position(pos + CENTRAL_HEADER_SIZE);
+            cd.get(nameBytes);
+            e.name = new String(nameBytes, (e.flags & 0x800) != 0 ? UTF8 : CP437);
+
+            e.centralRecord = new byte[recordLen];
+            cd.position(pos);
+            cd.get(e.centralRecord);
+
+            entries.add(e);
+            pos += recordLen;
+        }
+
+        return new ZipDirectory(entries, cdOffset, cdSize, end, tailSize + cdSize);
+    }
+
+    private static boolean matches(ByteBuffer cd, int namePos, int nameLen, byte[][] filter) {
+        for (byte[] name : filter) {
+            if (name.length != nameLen) continue;
+            int i = 0;
+            while (i < nameLen && cd.get(namePos + i) == name[i]) i++;
+            if (i == nameLen) return true;
+        }
+        return false;
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) throw new EOFException();
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry getEntry(String name) {
+        return byName.get(name);
+    }
+
+    //true if there is an entry in the directory or below it, the same as Files.isDirectory() on a zip file system
+    public boolean hasDirectory(String dir) {
+        String prefix = dir.endsWith("/") ? dir : dir + "/";
+        for (Entry e : entries) {
+            if (e.name.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    public long getCentralDirectoryOffset() {
+        return centralDirectoryOffset;
+    }
+
+    public long getCentralDirectorySize() {
+        return centralDirectorySize;
+    }
+
+    public byte[] getEnd() {
+        return end.clone();
+    }
+
+    //the number of bytes read from the file so far, including the entries read with readEntry()
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    //the offset of the entry's data
+    long getDataOffset(FileChannel channel, Entry e) throws IOException {
+        ByteBuffer header = readFully(channel, e.localHeaderOffset, LOCAL_HEADER_SIZE);
+        bytesRead += LOCAL_HEADER_SIZE;
+        if (header.getInt(0) != LOCAL_HEADER_SIG) throw new ZipException("Invalid local header for " + e.name);
+        return e.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+    }
+
+    //reads and inflates the entry
+    public byte[] readEntry(FileChannel channel, Entry e) throws IOException {
+        if (e.size > Integer.MAX_VALUE || e.compressedSize > Integer.MAX_VALUE) throw new ZipException("Entry too large: " + e.name);
+        ByteBuffer data = readFully(channel, getDataOffset(channel, e), (int) e.compressedSize);
+        bytesRead += e.compressedSize;
+
+        if (e.method == 0) return data.array();
+        if (e.method != 8) throw new ZipException("Unsupported compression method " + e.method + " for " + e.name);
+
+        byte[] result = new byte[(int) e.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data.array());
+            int n = 0;
+            while (n < result.length) {
+                int read = inflater.inflate(result, n, result.length - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            if (n != result.length) throw new ZipException("Invalid entry size for " + e.name);
+        } catch (DataFormatException ex) {
+            throw new ZipException("Invalid compressed data for " + e.name + ": " + ex.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    public static class Entry {
+        String name;
+        int flags;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+        byte[] centralRecord; //the whole central directory record, copied unchanged except for the offset
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+}
@@ -7,6 +7,18 @@ import java.io.ByteArrayOutputStream;
 public class Base64 {
     private static final String INDICES = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
 
+    //value of every character, -1 for characters that are not a part of the alphabet (like padding) and are skipped
+    private static final int[] TABLE = new int[128];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = -1;
+        }
+        for (int i = 0; i < INDICES.length(); i++) {
+            TABLE[INDICES.charAt(i)] = i;
+        }
+    }
+
     public static byte[] Decode(String input) {
         ByteArrayOutputStream baos = new ByteArrayOutputStream(input.length() * 6 / 8 + 1);
 
@@ -14,17 +26,16 @@ public class Base64 {
         int bitCnt = 0;
 
         for (int i = 0; i < input.length(); i++) {
-            int index = INDICES.indexOf(input.charAt(i));
+            char c = input.charAt(i);
+            int index = c < TABLE.length ? TABLE[c] : -1;
             if (index > -1) {
-                int bitsProvided = Math.min(6, (8 - bitCnt));
-                value = value << bitsProvided;
-                value |= index >>> 6 - bitsProvided;
-                bitCnt += bitsProvided;
-
-                if (bitCnt == 8) {
-                    baos.write(value);
-                    bitCnt = 6 - bitsProvided;
-                    value = index;
+                value = (value << 6) | index;
+                bitCnt += 6;
+
+                if (bitCnt >= 8) {
+                    bitCnt -= 8;
+                    baos.write(value >>> bitCnt);
+                    value &= (1 << bitCnt) - 1;
                 }
             }
         }
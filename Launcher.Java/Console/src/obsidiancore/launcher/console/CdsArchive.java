@@ -0,0 +1,288 @@
+package obsidiancore.launcher.console;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+//Keeps a class data sharing archive of the game's classes so that later launches map them instead of loading them.
+//The game runs on the same Java as the console, so the console's version decides how the archive is made:
+//  Java 10-12: the first launch writes the list of loaded classes, after the game exits the archive is dumped from it
+//  Java 13-18: the first launch writes the archive when the game exits (-XX:ArchiveClassesAtExit)
+//  Java 19+:   the JVM creates and replaces the archive itself (-XX:+AutoCreateSharedArchive)
+//Later launches use the archive. The name of the archive is the hash of the JVM (java.home, the VM version
+//and the size and time of lib/modules), the class and module path entries (with their sizes and times) and the -XX, -Xmx
+//and -javaagent options, so a changed library or JDK gets a new archive. The archives of other hashes are deleted.
+//The archives are kept in cds in the game directory (obsidiancore.launcher.cds.dir), obsidiancore.launcher.cds=false turns it off.
+//The time to the main menu is remembered for launches with and without the archive so they can be compared.
+
+public class CdsArchive {
+    public static final String CREATE = "create";
+    public static final String USE = "use";
+
+    private static final String STATS_FILE = "launches.properties";
+
+    private final int javaVersion;
+    private final File dir;
+    private final String key;
+    private final String classPath;
+    private final String[] dumpArgs;
+    private final File archive;
+    private final File classList;
+    private final String mode;
+
+    private CdsArchive(int javaVersion, File dir, String key, String classPath, String[] dumpArgs) {
+        this.javaVersion = javaVersion;
+        this.dir = dir;
+        this.key = key;
+        this.classPath = classPath;
+        this.dumpArgs = dumpArgs;
+        this.archive = new File(dir, key + ".jsa");
+        this.classList = new File(dir, key + ".classlist");
+        this.mode = archive.isFile() ? USE : CREATE;
+    }
+
+    //returns null if it's turned off, the Java has no application class data sharing or the game has no class path
+    public static CdsArchive createFromProperties(LaunchSpec spec) {
+        if ("false".equals(System.getProperty("obsidiancore.launcher.cds"))) return null;
+        int javaVersion = Console.getJavaVersionDescriptive();
+        if (javaVersion < 10) return null; //AppCDS was a commercial feature before
+        String classPath = spec.getOptionValue(new String[]{"-cp", "-classpath", "--class-path"});
+        if (classPath == null) return null;
+        String modulePath = spec.getOptionValue(new String[]{"-p", "--module-path"});
+        //the JVM can only archive from jars, a directory makes the dump fail and with it the exit code of the game
+        if (hasDirectory(classPath) || (modulePath != null && hasDirectory(modulePath))) return null;
+
+        String dirName = System.getProperty("obsidiancore.launcher.cds.dir");
+        if (dirName == null) dirName = "cds";
+        File dir = new File(System.getProperty("user.dir"), dirName);
+        if (!dir.isDirectory() && !dir.mkdirs()) return null;
+
+        List options = new ArrayList(); //of String
+        String[] args = spec.getArgs();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-XX:") || args[i].startsWith("-Xmx") || args[i].startsWith("-javaagent:")) options.add(args[i]);
+        }
+
+        String key;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            File javaHome = new File(System.getProperty("java.home"));
+            update(md, javaHome.getPath());
+            update(md, System.getProperty("java.vm.name"));
+            update(md, System.getProperty("java.vm.version"));
+            update(md, System.getProperty("os.arch"));
+            updateFile(md, new File(javaHome, "lib" + File.separator + "modules"));
+            updatePath(md, classPath);
+            if (modulePath != null) updatePath(md, modulePath);
+            for (int i = 0; i < options.size(); i++) {
+                update(md, (String) options.get(i));
+            }
+            key = toHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+
+        //the dump has to use the same heap size and collector as the game or the archive can't be mapped
+        List dumpArgs = new ArrayList(); //of String
+        for (int i = 0; i < options.size(); i++) {
+            String option = (String) options.get(i);
+            if (option.startsWith("-Xmx") || option.endsWith("GC") || option.indexOf("CompressedOops") >= 0 || option.indexOf("Unlock") >= 0) dumpArgs.add(option);
+        }
+
+        CdsArchive cds = new CdsArchive(javaVersion, dir, key, classPath, (String[]) dumpArgs.toArray(new String[dumpArgs.size()]));
+        cds.deleteOthers();
+        return cds;
+    }
+
+    private static void update(MessageDigest md, String s) {
+        try {
+            md.update((s != null ? s : "").getBytes("UTF-8"));
+            md.update((byte) 0);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e); //this is virtually impossible
+        }
+    }
+
+    private static void updateFile(MessageDigest md, File file) {
+        update(md, file.getPath() + "|" + file.length() + "|" + file.lastModified());
+    }
+
+    private static void updatePath(MessageDigest md, String path) {
+        File[] files = getFiles(path);
+        for (int i = 0; i < files.length; i++) {
+            updateFile(md, files[i]);
+        }
+    }
+
+    private static boolean hasDirectory(String path) {
+        File[] files = getFiles(path);
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isDirectory()) return true;
+        }
+        return false;
+    }
+
+    private static File[] getFiles(String path) {
+        String[] entries = path.split(File.pathSeparator);
+        File[] files = new File[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            files[i] = new File(entries[i]);
+            if (!files[i].isAbsolute()) files[i] = new File(System.getProperty("user.dir"), entries[i]);
+        }
+        return files;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuffer sb = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    //the archives and class lists of other libraries or JDKs won't be used again
+    private void deleteOthers() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if ((name.endsWith(".jsa") || name.endsWith(".classlist")) && !name.startsWith(key)) files[i].delete();
+        }
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    //the options for the game JVM
+    public String[] getJvmArgs() {
+        String archivePath = archive.getPath();
+        if (javaVersion >= 19) {
+            return new String[]{"-XX:+AutoCreateSharedArchive", "-XX:SharedArchiveFile=" + archivePath};
+        }
+        if (USE.equals(mode)) {
+            if (javaVersion == 10) return new String[]{"-XX:+UseAppCDS", "-XX:SharedArchiveFile=" + archivePath};
+            return new String[]{"-XX:SharedArchiveFile=" + archivePath};
+        }
+        if (javaVersion >= 13) return new String[]{"-XX:ArchiveClassesAtExit=" + archivePath};
+        return new String[]{"-XX:DumpLoadedClassList=" + classList.getPath()};
+    }
+
+    //called after the game exited, makes the archive if it's made after the game and remembers the launch time,
+    //returns lines for the console
+    public String[] afterExit(int exitCode, LaunchTimeline timeline) {
+        List lines = new ArrayList(); //of String
+        if (CREATE.equals(mode)) {
+            if (exitCode != 0) {
+                //an archive of a crashed launch misses most of the classes, the next launch makes a new one
+                if (javaVersion < 19) archive.delete();
+                classList.delete();
+                lines.add("Class data sharing: the game didn't exit normally, the archive will be made on the next launch");
+            } else if (javaVersion < 13) {
+                lines.add(dump());
+            } else {
+                lines.add(archive.isFile() ? "Class data sharing: archive written to " + archive.getPath() : "Class data sharing: the game didn't write the archive");
+            }
+        }
+
+        long millis = timeline.getMillisSinceJvmStart(LaunchTimeline.MAIN_MENU);
+        if (millis >= 0) {
+            Properties stats = readStats();
+            String name = USE.equals(mode) ? "with" : "without";
+            stats.setProperty(name, String.valueOf(millis));
+            writeStats(stats);
+
+            String with = stats.getProperty("with"), without = stats.getProperty("without");
+            if (with != null && without != null) {
+                lines.add("Class data sharing: main menu after " + with + " ms with the archive, " + without + " ms without it (the last launch of each)");
+            }
+        }
+        return (String[]) lines.toArray(new String[lines.size()]);
+    }
+
+    //Java 10-12, the archive is dumped from the class list in a separate JVM
+    private String dump() {
+        if (!classList.isFile()) return "Class data sharing: the game didn't write the class list";
+
+        List cmd = new ArrayList(); //of String
+        cmd.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        if (javaVersion == 10) cmd.add("-XX:+UseAppCDS");
+        for (int i = 0; i < dumpArgs.length; i++) {
+            cmd.add(dumpArgs[i]);
+        }
+        cmd.add("-Xshare:dump");
+        cmd.add("-XX:SharedClassListFile=" + classList.getPath());
+        cmd.add("-XX:SharedArchiveFile=" + archive.getPath());
+        cmd.add("-cp");
+        cmd.add(classPath);
+
+        String lastLine = "";
+        int exitCode;
+        try {
+            ProcessBuilder pb = new ProcessBuilder(cmd);
+            pb.directory(new File(System.getProperty("user.dir")));
+            pb.redirectErrorStream(true);
+            Process proc = pb.start();
+            proc.getOutputStream().close();
+            BufferedReader br = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.trim().length() > 0) lastLine = line;
+                }
+            } finally {
+                br.close();
+            }
+            exitCode = proc.waitFor();
+        } catch (Exception e) {
+            archive.delete();
+            return "Class data sharing: the archive couldn't be dumped: " + e.getMessage();
+        } finally {
+            classList.delete();
+        }
+
+        if (exitCode != 0 || !archive.isFile()) {
+            archive.delete();
+            return "Class data sharing: the archive couldn't be dumped: " + lastLine;
+        }
+        return "Class data sharing: archive written to " + archive.getPath();
+    }
+
+    private Properties readStats() {
+        Properties stats = new Properties();
+        File file = new File(dir, STATS_FILE);
+        if (!file.isFile()) return stats;
+        try {
+            FileInputStream is = new FileInputStream(file);
+            try {
+                stats.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException ignore) {
+        }
+        return stats;
+    }
+
+    private void writeStats(Properties stats) {
+        try {
+            FileOutputStream os = new FileOutputStream(new File(dir, STATS_FILE));
+            try {
+                stats.store(os, null);
+            } finally {
+                os.close();
+            }
+        } catch (IOException ignore) {
+        }
+    }
+}
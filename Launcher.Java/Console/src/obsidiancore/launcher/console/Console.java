@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,44 +15,124 @@ public class Console {
     private static FileOutputStream lock;
 
     public static void main(String[] args) throws IOException {
-        String javaBin = Decode(System.getProperty("obsidiancore.launcher.java"));
-        String name = Decode(System.getProperty("obsidiancore.launcher.name"));
-        String lockFile = Decode(System.getProperty("obsidiancore.launcher.lock"));
-        boolean closeOnExit = "true".equals(System.getProperty("obsidiancore.launcher.closeOnExit"));
+        LaunchTimeline timeline = new LaunchTimeline();
+
+        LaunchSpec spec = LaunchSpec.fromSystemProperties(args);
+        String lockFile = spec.getLockFile();
+        String headless = System.getProperty("obsidiancore.launcher.headless"); //"file", "inherit" or not set
 
         if (lockFile.length() > 0) {
             lock = new FileOutputStream(lockFile);
         }
 
-        String[] cmdArr = new String[args.length + 1];
-        System.arraycopy(args, 0, cmdArr, 1, args.length);
-        cmdArr[0] = javaBin;
+        GcMonitor gcMonitor = GcMonitor.createFromProperties();
+        if (gcMonitor != null) spec.addJvmArgs(gcMonitor.getJvmArgs(spec));
+
+        String agentArg = getPatchAgentArg();
+        if (agentArg != null) spec.addJvmArgs(new String[]{agentArg});
+
+        //after the other options, they are part of what the archive is made for
+        CdsArchive cds = CdsArchive.createFromProperties(spec);
+        if (cds != null) {
+            spec.addJvmArgs(cds.getJvmArgs());
+            timeline.setClassDataSharing(cds.getMode());
+        }
+
+        String[] cmdArr = spec.getCommandWithArgFile();
 
-        ConsoleWindow console = new ConsoleWindow(name, closeOnExit);
+        if (headless != null && !"false".equals(headless)) {
+            System.exit(runHeadless(cmdArr, "inherit".equals(headless), timeline, gcMonitor, cds));
+        }
+
+        ConsoleWindow console = new ConsoleWindow(spec.getName(), spec.isCloseOnExit());
+        OutputPipeline pipeline = new OutputPipeline(console, LogFileSink.createFromProperties(), timeline);
         try {
-            Process proc = Runtime.getRuntime().exec(cmdArr, null, new File(System.getProperty("user.dir")));
-            console.logProcess(proc);
+            Process proc = createProcessBuilder(cmdArr).start();
+            if (gcMonitor != null) console.showGcPanel(gcMonitor);
+            console.logProcess(new GameProcess(proc, pipeline, gcMonitor, cds));
         } catch (Exception ex) {
             console.appendLine(ex.getClass().getName());
             console.appendLine(ex.getMessage());
         }
     }
 
-    private static String Decode(String input) {
-        byte[] bytes = Base64.Decode(input);
+    //Runs the game without the console window and returns its exit code.
+    //The output either goes to the session log file or to the stdout and stderr of this process,
+    //without a log file (obsidiancore.launcher.console.log=false) it always goes to this process.
+    //The end is handled by GameProcess the same way for both.
+    private static int runHeadless(String[] cmdArr, boolean inherit, LaunchTimeline timeline, GcMonitor gcMonitor, CdsArchive cds) {
+        try {
+            LogFileSink logSink = inherit ? null : LogFileSink.createFromProperties();
+            if (!inherit && logSink == null) {
+                System.err.println("[Console] The log file is turned off, the output of the game goes to stdout and stderr");
+                inherit = true;
+            }
+
+            ProcessBuilder pb = createProcessBuilder(cmdArr);
+            boolean inheritIO = inherit && getJavaVersionDescriptive() >= 7;
+            OutputTarget target = null;
+            if (inheritIO) {
+                pb.inheritIO();
+                //the game writes to the streams itself, only the messages of the console are printed here
+                target = new OutputTarget() {
+                    public void appendLine(String line) {
+                        System.err.println("[Console] " + line);
+                    }
+                };
+            } else if (inherit) {
+                target = new OutputTarget() {
+                    public void appendLine(String line) {
+                        System.out.println(line);
+                    }
+                };
+            }
+            OutputPipeline pipeline = new OutputPipeline(target, logSink, timeline);
+
+            Process proc = pb.start();
+            if (!inheritIO) proc.getOutputStream().close();
+            GameProcess gameProcess = new GameProcess(proc, pipeline, gcMonitor, cds, inheritIO);
+            int exitCode = gameProcess.waitForEnd();
+            gameProcess.finish(exitCode);
+            return exitCode;
+        } catch (Exception ex) {
+            System.err.println(ex.getClass().getName());
+            System.err.println(ex.getMessage());
+            return 1;
+        }
+    }
+
+    private static ProcessBuilder createProcessBuilder(String[] cmdArr) {
+        ProcessBuilder pb = new ProcessBuilder(cmdArr);
+        pb.directory(new File(System.getProperty("user.dir")));
+        return pb;
+    }
+
+    //Returns the -javaagent option that makes the game apply the bytecode patches while loading (see obsidiancore.launcher.bcp.PatchAgent),
+    //or null if obsidiancore.launcher.agent isn't set. The property is either "true" or the options of the agent.
+    //The agent is this jar, it needs Java 8 because of BCEL.
+    private static String getPatchAgentArg() {
+        String agent = System.getProperty("obsidiancore.launcher.agent");
+        if (agent == null || "false".equals(agent) || getJavaVersionDescriptive() < 8) return null;
+
+        URL location = Console.class.getProtectionDomain().getCodeSource().getLocation();
+        if (!"file".equals(location.getProtocol()) || !location.getPath().endsWith(".jar")) return null;
+        String path;
         try {
-            return new String(bytes, "UTF-8");
+            path = new File(URLDecoder.decode(location.getPath().replaceAll("\\+", "%2B"), "UTF-8")).getPath();
         } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e); //this is virtually impossible
+            return null;
         }
+
+        return "-javaagent:" + path + ("true".equals(agent) ? "" : "=" + agent);
     }
 
+    //"1.8.0_392" is 8, GA releases since 9 have no minor version ("17", "21-ea")
     public static int getJavaVersionDescriptive() {
-        Pattern p = Pattern.compile("^(\\d+)\\.(\\d+)");
+        Pattern p = Pattern.compile("^(\\d+)(?:\\.(\\d+))?");
         Matcher m = p.matcher(System.getProperty("java.version"));
         if (m.find()) {
             int major = Integer.parseInt(m.group(1));
-            int minor = Integer.parseInt(m.group(2));
+            int minor = m.group(2) != null ? Integer.parseInt(m.group(2)) : 0;
 
             if (major > 1)
                 return major;
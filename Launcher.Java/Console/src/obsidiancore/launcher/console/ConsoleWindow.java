@@ -8,11 +8,18 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 
-public class ConsoleWindow extends Frame implements ActionListener, WindowListener {
+public class ConsoleWindow extends Frame implements OutputTarget, ActionListener, WindowListener {
 
-    private final TextArea textArea;
+    private final LogView logView;
+    private final LineBatcher batcher;
+    private final Label labelStatus;
     private final Button buttonClear, buttonCopyAll, buttonKill;
 
+    private final Choice choiceLevel;
+    private final TextField fieldThread, fieldLogger, fieldSearch;
+    private final Button buttonFilter, buttonReset;
+    private final Label labelMatches;
+
     private final Clipboard clip;
     private final Checkbox checkboxCloseOnExit;
 
@@ -28,9 +35,47 @@ public class ConsoleWindow extends Frame implements ActionListener, WindowListen
 
         setLayout(new BorderLayout());
 
-        textArea = new TextArea("", 30, 80, TextArea.SCROLLBARS_VERTICAL_ONLY);
-        textArea.setEditable(false);
-        add(textArea, BorderLayout.CENTER);
+        logView = new LogView(LogBuffer.createFromProperties());
+        add(logView, BorderLayout.CENTER);
+
+        Panel filterPanel = new Panel();
+        filterPanel.setLayout(new FlowLayout(FlowLayout.LEFT));
+
+        filterPanel.add(new Label("Level:"));
+        choiceLevel = new Choice();
+        choiceLevel.add("All");
+        for (int i = 0; i < LogIndex.LEVELS.length; i++) {
+            choiceLevel.add(LogIndex.LEVELS[i]);
+        }
+        filterPanel.add(choiceLevel);
+
+        filterPanel.add(new Label("Thread:"));
+        fieldThread = new TextField(12);
+        fieldThread.addActionListener(this);
+        filterPanel.add(fieldThread);
+
+        filterPanel.add(new Label("Logger:"));
+        fieldLogger = new TextField(12);
+        fieldLogger.addActionListener(this);
+        filterPanel.add(fieldLogger);
+
+        filterPanel.add(new Label("Search:"));
+        fieldSearch = new TextField(20);
+        fieldSearch.addActionListener(this);
+        filterPanel.add(fieldSearch);
+
+        buttonFilter = new Button("Filter");
+        buttonFilter.addActionListener(this);
+        filterPanel.add(buttonFilter);
+
+        buttonReset = new Button("Reset");
+        buttonReset.addActionListener(this);
+        filterPanel.add(buttonReset);
+
+        labelMatches = new Label();
+        filterPanel.add(labelMatches);
+
+        add(filterPanel, BorderLayout.NORTH);
 
         Panel bottomPanel = new Panel();
         bottomPanel.setLayout(new FlowLayout(FlowLayout.LEFT));
@@ -52,17 +97,31 @@ public class ConsoleWindow extends Frame implements ActionListener, WindowListen
         checkboxCloseOnExit.setEnabled(false);
         bottomPanel.add(checkboxCloseOnExit);
 
+        labelStatus = new Label();
+        bottomPanel.add(labelStatus);
+
         add(bottomPanel, BorderLayout.SOUTH);
 
+        batcher = new LineBatcher(logView, labelStatus);
+
         pack();
         setVisible(true);
     }
 
     public void actionPerformed(ActionEvent e) {
-        if (e.getSource() == buttonClear) {
-            textArea.setText("");
+        if (e.getSource() == buttonFilter || e.getSource() == fieldThread || e.getSource() == fieldLogger || e.getSource() == fieldSearch) {
+            applyFilter(new LogQuery(choiceLevel.getSelectedIndex() == 0 ? null : choiceLevel.getSelectedItem(),
+                    fieldThread.getText(), fieldLogger.getText(), fieldSearch.getText()));
+        } else if (e.getSource() == buttonReset) {
+            choiceLevel.select(0);
+            fieldThread.setText("");
+            fieldLogger.setText("");
+            fieldSearch.setText("");
+            applyFilter(null);
+        } else if (e.getSource() == buttonClear) {
+            logView.clear();
         } else if (e.getSource() == buttonCopyAll) {
-            clip.setContents(new StringSelection(textArea.getText()), null);
+            clip.setContents(new StringSelection(logView.getBuffer().getText()), null);
         } else if (e.getSource() == buttonKill) {
             try {
                 proc.destroy();
@@ -71,19 +130,30 @@ public class ConsoleWindow extends Frame implements ActionListener, WindowListen
         }
     }
 
-    public void logProcess(final Process proc) {
-        this.proc = proc;
+    private void applyFilter(LogQuery query) {
+        long start = System.currentTimeMillis();
+        logView.setQuery(query);
+        int matches = logView.getMatchCount();
+        labelMatches.setText(matches < 0 ? "" : matches + " lines matched in " + (System.currentTimeMillis() - start) + " ms");
+        labelMatches.getParent().validate();
+    }
+
+    public void showGcPanel(GcMonitor gcMonitor) {
+        add(new GcPanel(gcMonitor), BorderLayout.EAST);
+        pack();
+    }
+
+    public void logProcess(final GameProcess gameProcess) {
+        this.proc = gameProcess.getProcess();
         buttonKill.setEnabled(true);
         checkboxCloseOnExit.setEnabled(true);
 
-        new InputReader(proc.getInputStream(), this);
-        new InputReader(proc.getErrorStream(), this);
-
         Thread exitThread = new Thread(new Runnable() {
             public void run() {
                 try {
-                    final int exitCode = proc.waitFor();
-                    Thread.sleep(200); //wait for the buffers to empty
+                    final int exitCode = gameProcess.waitForEnd();
+                    //closing the log and writing the summaries touches the disk, that's kept off the event thread
+                    gameProcess.finish(exitCode);
                     EventQueue.invokeLater(new Runnable() {
                         public void run() {
                             processExited(exitCode);
@@ -97,13 +167,8 @@ public class ConsoleWindow extends Frame implements ActionListener, WindowListen
         exitThread.start();
     }
 
-    void appendLine(final String text) {
-        EventQueue.invokeLater(new Runnable() {
-            public void run() {
-                textArea.append(text);
-                textArea.append("\n");
-            }
-        });
+    public void appendLine(String text) {
+        batcher.add(text);
     }
 
     private void processExited(int exitCode) {
@@ -116,15 +181,13 @@ public class ConsoleWindow extends Frame implements ActionListener, WindowListen
                 System.exit(0);
             }
         }
-
-        appendLine("Exited with code: " + exitCode);
     }
 
     public void windowOpened(WindowEvent e) {
         // TODO: this one (is this ok on Linux and Mac?)
         if (Console.getJavaVersionDescriptive() <= 8) { //maybe others too?
             //make the font and window larger
-            textArea.setFont(textArea.getFont().deriveFont(textArea.getFont().getSize() + 4f));
+            logView.setFont(logView.getFont().deriveFont(logView.getFont().getSize() + 4f));
             pack();
         }
     }
@@ -0,0 +1,86 @@
+package obsidiancore.launcher.console;
+
+import java.io.File;
+
+//Captures the output of the started game process and handles its end.
+//The end is only reported after both output streams were read to the end, so no output is lost.
+//With inherited output the game writes to the streams of the console itself and only the messages go through the pipeline.
+
+public class GameProcess {
+    private final Process proc;
+    private final OutputPipeline pipeline;
+    private final InputReader stdout, stderr;
+    private final GcMonitor gcMonitor;
+    private final CdsArchive cds;
+
+    public GameProcess(Process proc, OutputPipeline pipeline, GcMonitor gcMonitor, CdsArchive cds) {
+        this(proc, pipeline, gcMonitor, cds, false);
+    }
+
+    public GameProcess(Process proc, OutputPipeline pipeline, GcMonitor gcMonitor, CdsArchive cds, boolean inheritedOutput) {
+        this.proc = proc;
+        this.pipeline = pipeline;
+        this.gcMonitor = gcMonitor;
+        this.cds = cds;
+        if (gcMonitor != null) gcMonitor.start();
+
+        pipeline.getTimeline().mark(LaunchTimeline.PROCESS_STARTED);
+        pipeline.message("Game process started " + pipeline.getTimeline().getMillisSinceJvmStart(LaunchTimeline.PROCESS_STARTED) + " ms after the console started");
+
+        if (inheritedOutput) {
+            stdout = stderr = null;
+        } else {
+            stdout = new InputReader(proc.getInputStream(), OutputPipeline.STDOUT, pipeline);
+            stderr = new InputReader(proc.getErrorStream(), OutputPipeline.STDERR, pipeline);
+        }
+    }
+
+    public Process getProcess() {
+        return proc;
+    }
+
+    //waits for the process to exit and for its output to be fully read, returns the exit code
+    //the class data sharing archive is made here too, since it can take a while this isn't called on the event thread
+    public int waitForEnd() throws InterruptedException {
+        int exitCode = proc.waitFor();
+        pipeline.getTimeline().mark(LaunchTimeline.PROCESS_EXIT);
+        pipeline.getTimeline().setExitCode(exitCode);
+        if (stdout != null) {
+            stdout.join();
+            stderr.join();
+            pipeline.getTimeline().mark(LaunchTimeline.OUTPUT_CLOSED);
+        }
+        if (cds != null) {
+            String[] lines = cds.afterExit(exitCode, pipeline.getTimeline());
+            for (int i = 0; i < lines.length; i++) {
+                pipeline.message(lines[i]);
+            }
+        }
+        return exitCode;
+    }
+
+    //reports the exit and writes out everything that's pending, it writes files so it isn't called on the event thread
+    public void finish(int exitCode) {
+        LaunchTimeline timeline = pipeline.getTimeline();
+        String[] summary = timeline.getSummary();
+        for (int i = 0; i < summary.length; i++) {
+            pipeline.message(summary[i]);
+        }
+        if (!"false".equals(System.getProperty("obsidiancore.launcher.console.timeline"))) {
+            File file = timeline.writeJson(LogFileSink.getLogDirFromProperties());
+            if (file != null) pipeline.message("Launch timeline written to " + file.getPath());
+        }
+
+        if (gcMonitor != null) {
+            File file = gcMonitor.writeSummary();
+            summary = gcMonitor.getSummary();
+            for (int i = 0; i < summary.length; i++) {
+                pipeline.message(summary[i]);
+            }
+            if (file != null) pipeline.message("GC summary written to " + file.getPath());
+        }
+
+        pipeline.message("Exited with code: " + exitCode);
+        if (pipeline.getLogSink() != null) pipeline.getLogSink().close();
+    }
+}
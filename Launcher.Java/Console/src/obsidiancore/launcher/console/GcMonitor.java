@@ -0,0 +1,305 @@
+package obsidiancore.launcher.console;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Adds GC logging to the game command and follows the GC log while the game runs.
+//The events with a heap transition and the pauses are used:
+//  Java 9+ (-Xlog:gc:...:uptime): "[12.345s] GC(3) Pause Young (Normal) (G1 Evacuation Pause) 24M->3M(256M) 3.456ms"
+//  Java 8 and older (-Xloggc):    "12.345: [GC (Allocation Failure)  24576K->3000K(251392K), 0.0034567 secs]"
+//                                 "12.345: [GC pause (G1 Evacuation Pause) (young) 24M->3052K(256M), 0.0034567 secs]"
+//  Shenandoah and ZGC log their pauses without a heap transition: "[12.345s] GC(3) Pause Init Mark (unload classes) 0.016ms",
+//  and ZGC its heap with percentages: "[12.345s] GC(3) Garbage Collection (Warmup) 94M(73%)->52M(41%)".
+//  ZGC logs the pauses with the gc+phases tags, so they are only logged for it.
+
+public class GcMonitor implements Runnable {
+    //upper limits of the pause histogram buckets in ms, the last bucket is everything above
+    public static final int[] HISTOGRAM_LIMITS = new int[]{1, 5, 10, 20, 50, 100, 200, 500};
+
+    private static final Pattern UNIFIED = Pattern.compile(
+            "^\\[(\\d+[.,]\\d+)s\\].*GC\\(\\d+\\) (.*?)(\\d+)([KMG])->(\\d+)([KMG])\\((\\d+)([KMG])\\)(?: (\\d+[.,]\\d+)ms)?");
+    private static final Pattern UNIFIED_PAUSE = Pattern.compile(
+            "^\\[(\\d+[.,]\\d+)s\\].*GC\\(\\d+\\) (?:[YO]: )?Pause [^>]* (\\d+[.,]\\d+)ms\\s*$");
+    private static final Pattern ZGC = Pattern.compile(
+            "^\\[(\\d+[.,]\\d+)s\\].*GC\\(\\d+\\) (?:Garbage|Major|Minor) Collection .*?(\\d+)([KMG])\\((\\d+)%\\)->(\\d+)([KMG])\\((\\d+)%\\)");
+    private static final Pattern LEGACY = Pattern.compile(
+            "^(\\d+[.,]\\d+): \\[(Full GC|GC).*?(\\d+)([KMG])->(\\d+)([KMG])\\((\\d+)([KMG])\\), (\\d+[.,]\\d+) secs\\]");
+    //the G1 remark is a pause without a heap transition
+    private static final Pattern LEGACY_PAUSE = Pattern.compile(
+            "^(\\d+[.,]\\d+): \\[GC remark.*?, (\\d+[.,]\\d+) secs\\]");
+
+    private static final long POLL_MILLIS = 500;
+
+    private final File logFile;
+    private final long startedMillis;
+    private Runnable listener;
+
+    //guarded by this
+    private int events = 0;
+    private int pauses = 0;
+    private int fullPauses = 0;
+    private double totalPauseMillis = 0;
+    private double maxPauseMillis = 0;
+    private double lastPauseMillis = 0;
+    private final int[] histogram = new int[HISTOGRAM_LIMITS.length + 1];
+    private long heapUsedKb = 0, heapCommittedKb = 0, maxHeapCommittedKb = 0;
+    private long allocatedKb = 0;
+    private double firstEventSeconds = -1, lastEventSeconds = 0;
+    private double allocationRateMbs = 0;
+
+    private long prevAfterKb = -1;
+    private double prevSeconds = 0;
+
+    //reading state, guarded by this
+    private long offset = 0;
+    private final byte[] buf = new byte[64 * 1024];
+    private final StringBuffer partial = new StringBuffer();
+
+    private GcMonitor(File logFile) {
+        this.logFile = logFile;
+        this.startedMillis = System.currentTimeMillis();
+    }
+
+    //returns null unless obsidiancore.launcher.gcLog is true
+    public static GcMonitor createFromProperties() {
+        if (!"true".equals(System.getProperty("obsidiancore.launcher.gcLog"))) return null;
+
+        File dir = LogFileSink.getLogDirFromProperties();
+        if (!dir.isDirectory() && !dir.mkdirs()) return null;
+        return new GcMonitor(new File(dir, "gc-" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date()) + ".log"));
+    }
+
+    //the options that make the game JVM write the GC log, it runs on the same Java as the console
+    public String[] getJvmArgs(LaunchSpec spec) {
+        //the game runs in user.dir, a relative path avoids the ':' of Windows drives that -Xlog would need quoted
+        String path = logFile.getPath();
+        String userDir = new File(System.getProperty("user.dir")).getPath() + File.separator;
+        if (path.startsWith(userDir)) path = path.substring(userDir.length());
+
+        if (Console.getJavaVersionDescriptive() >= 9) {
+            String tags = isZgc(spec) ? "gc,gc+phases" : "gc";
+            return new String[]{"-Xlog:" + tags + ":file=" + (path.indexOf(':') >= 0 || path.indexOf(' ') >= 0 ? "\"" + path + "\"" : path) + ":uptime"};
+        } else {
+            return new String[]{"-Xloggc:" + path, "-XX:+PrintGCTimeStamps"};
+        }
+    }
+
+    private static boolean isZgc(LaunchSpec spec) {
+        String[] args = spec.getArgs();
+        for (int i = 0; i < args.length; i++) {
+            if ("-XX:+UseZGC".equals(args[i])) return true;
+        }
+        return false;
+    }
+
+    //called on the monitor thread after new events were read
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    public void start() {
+        Thread t = new Thread(this, "Console GC log reader");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                Thread.sleep(POLL_MILLIS);
+                if (poll() && listener != null) listener.run();
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    //reads the new part of the log, returns true if there were new events
+    private synchronized boolean poll() {
+        if (!logFile.isFile() || logFile.length() <= offset) return false;
+
+        boolean changed = false;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(logFile, "r");
+            try {
+                raf.seek(offset);
+                int read;
+                while ((read = raf.read(buf)) > 0) {
+                    offset += read;
+                    for (int i = 0; i < read; i++) {
+                        char c = (char) (buf[i] & 0xff); //the interesting parts are ASCII
+                        if (c == '\n') {
+                            changed |= parseLine(partial.toString());
+                            partial.setLength(0);
+                        } else if (c != '\r') {
+                            partial.append(c);
+                        }
+                    }
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ignore) {
+        }
+        return changed;
+    }
+
+    //returns true if the line was a GC event
+    synchronized boolean parseLine(String line) {
+        Matcher m = UNIFIED.matcher(line);
+        if (m.find()) {
+            double seconds = parseDouble(m.group(1));
+            addHeap(seconds, toKb(m.group(3), m.group(4)), toKb(m.group(5), m.group(6)), toKb(m.group(7), m.group(8)));
+            if (m.group(2).indexOf("Pause") >= 0 && m.group(9) != null) {
+                addPause(parseDouble(m.group(9)), m.group(2).indexOf("Full") >= 0);
+            }
+            return true;
+        }
+
+        m = UNIFIED_PAUSE.matcher(line);
+        if (m.find()) {
+            addTime(parseDouble(m.group(1)));
+            addPause(parseDouble(m.group(2)), false);
+            return true;
+        }
+
+        m = ZGC.matcher(line);
+        if (m.find()) {
+            //the percentages are of the maximum heap, ZGC doesn't log what's committed
+            long beforeKb = toKb(m.group(2), m.group(3)), afterKb = toKb(m.group(5), m.group(6));
+            int beforePercent = Integer.parseInt(m.group(4)), afterPercent = Integer.parseInt(m.group(7));
+            long maxKb = beforePercent >= afterPercent ? (beforePercent > 0 ? beforeKb * 100 / beforePercent : -1) : afterKb * 100 / afterPercent;
+            addHeap(parseDouble(m.group(1)), beforeKb, afterKb, maxKb);
+            return true;
+        }
+
+        m = LEGACY.matcher(line);
+        if (m.find()) {
+            addHeap(parseDouble(m.group(1)), toKb(m.group(3), m.group(4)), toKb(m.group(5), m.group(6)), toKb(m.group(7), m.group(8)));
+            addPause(parseDouble(m.group(9)) * 1000, "Full GC".equals(m.group(2)));
+            return true;
+        }
+
+        m = LEGACY_PAUSE.matcher(line);
+        if (m.find()) {
+            addTime(parseDouble(m.group(1)));
+            addPause(parseDouble(m.group(2)) * 1000, false);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void addTime(double seconds) {
+        events++;
+        if (firstEventSeconds < 0) firstEventSeconds = seconds;
+        lastEventSeconds = seconds;
+    }
+
+    //committedKb is -1 if it isn't known
+    private void addHeap(double seconds, long beforeKb, long afterKb, long committedKb) {
+        addTime(seconds);
+
+        heapUsedKb = afterKb;
+        if (committedKb >= 0) heapCommittedKb = committedKb;
+        if (committedKb > maxHeapCommittedKb) maxHeapCommittedKb = committedKb;
+
+        //everything above what was left after the previous collection was allocated in between
+        long allocated = prevAfterKb >= 0 ? beforeKb - prevAfterKb : beforeKb;
+        if (allocated > 0) {
+            allocatedKb += allocated;
+            if (prevAfterKb >= 0 && seconds > prevSeconds) {
+                allocationRateMbs = allocated / 1024.0 / (seconds - prevSeconds);
+            }
+        }
+        prevAfterKb = afterKb;
+        prevSeconds = seconds;
+    }
+
+    private void addPause(double pauseMillis, boolean isFull) {
+        pauses++;
+        if (isFull) fullPauses++;
+        totalPauseMillis += pauseMillis;
+        lastPauseMillis = pauseMillis;
+        if (pauseMillis > maxPauseMillis) maxPauseMillis = pauseMillis;
+
+        int bucket = 0;
+        while (bucket < HISTOGRAM_LIMITS.length && pauseMillis >= HISTOGRAM_LIMITS[bucket]) bucket++;
+        histogram[bucket]++;
+    }
+
+    private static double parseDouble(String s) {
+        return Double.parseDouble(s.replace(',', '.'));
+    }
+
+    private static long toKb(String value, String unit) {
+        long v = Long.parseLong(value);
+        if ("M".equals(unit)) return v * 1024;
+        if ("G".equals(unit)) return v * 1024 * 1024;
+        return v;
+    }
+
+    public synchronized int[] getHistogram() {
+        return (int[]) histogram.clone();
+    }
+
+    //human readable lines for the console window
+    public synchronized String[] getSummary() {
+        double span = lastEventSeconds - firstEventSeconds;
+        return new String[]{
+                "Heap: " + (heapUsedKb / 1024) + " MB used after the last GC, " + (heapCommittedKb / 1024) + " MB committed (max " + (maxHeapCommittedKb / 1024) + " MB)",
+                "GC pauses: " + pauses + " (" + fullPauses + " full), total " + round(totalPauseMillis) + " ms, max " + round(maxPauseMillis) + " ms, last " + round(lastPauseMillis) + " ms",
+                "Allocation: " + round(allocationRateMbs) + " MB/s now, " + (span > 0 ? round(allocatedKb / 1024.0 / span) : round(0)) + " MB/s average, " + (allocatedKb / 1024) + " MB total",
+        };
+    }
+
+    private static String round(double value) {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+
+    public synchronized String toJson() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("{\n");
+        sb.append("  \"gcLog\": \"").append(logFile.getPath().replace('\\', '/')).append("\",\n");
+        sb.append("  \"startedEpochMillis\": ").append(startedMillis).append(",\n");
+        sb.append("  \"events\": ").append(events).append(",\n");
+        sb.append("  \"pauses\": ").append(pauses).append(",\n");
+        sb.append("  \"fullPauses\": ").append(fullPauses).append(",\n");
+        sb.append("  \"totalPauseMillis\": ").append(round(totalPauseMillis)).append(",\n");
+        sb.append("  \"maxPauseMillis\": ").append(round(maxPauseMillis)).append(",\n");
+        sb.append("  \"heapUsedAfterLastGcKb\": ").append(heapUsedKb).append(",\n");
+        sb.append("  \"maxHeapCommittedKb\": ").append(maxHeapCommittedKb).append(",\n");
+        sb.append("  \"allocatedKb\": ").append(allocatedKb).append(",\n");
+        sb.append("  \"pauseHistogramMillis\": {");
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('"').append(i < HISTOGRAM_LIMITS.length ? "<" + HISTOGRAM_LIMITS[i] : ">=" + HISTOGRAM_LIMITS[i - 1]).append("\": ").append(histogram[i]);
+        }
+        sb.append("}\n}\n");
+        return sb.toString();
+    }
+
+    //reads what's left of the log and writes the summary next to it, returns the file or null if it failed
+    public File writeSummary() {
+        poll();
+        File file = new File(logFile.getParentFile(), logFile.getName().replaceFirst("\\.log$", "") + "-summary.json");
+        try {
+            Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                w.write(toJson());
+            } finally {
+                w.close();
+            }
+            return file;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package obsidiancore.launcher.console;
+
+import java.awt.*;
+
+//Side panel of the console window that shows the live heap and GC statistics of the game.
+
+public class GcPanel extends Panel implements Runnable {
+    private final GcMonitor monitor;
+    private final Label[] labels = new Label[3];
+    private final HistogramCanvas histogram = new HistogramCanvas();
+
+    public GcPanel(GcMonitor monitor) {
+        this.monitor = monitor;
+
+        setLayout(new BorderLayout());
+
+        Panel labelPanel = new Panel(new GridLayout(0, 1));
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = new Label();
+            labelPanel.add(labels[i]);
+        }
+        add(labelPanel, BorderLayout.NORTH);
+        add(histogram, BorderLayout.CENTER);
+
+        update();
+        monitor.setListener(new Runnable() {
+            public void run() {
+                EventQueue.invokeLater(GcPanel.this);
+            }
+        });
+    }
+
+    //event queue method
+    public void run() {
+        update();
+    }
+
+    private void update() {
+        String[] summary = monitor.getSummary();
+        for (int i = 0; i < labels.length && i < summary.length; i++) {
+            labels[i].setText(summary[i]);
+        }
+        histogram.repaint();
+        validate();
+    }
+
+    private class HistogramCanvas extends Canvas {
+        public Dimension getPreferredSize() {
+            return new Dimension(240, 160);
+        }
+
+        public void paint(Graphics g) {
+            int[] counts = monitor.getHistogram();
+            int max = 1;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > max) max = counts[i];
+            }
+
+            Dimension size = getSize();
+            FontMetrics fm = g.getFontMetrics();
+            int rowHeight = Math.max(fm.getHeight(), (size.height - fm.getHeight()) / counts.length);
+            int labelWidth = fm.stringWidth(">=500 ms") + 8;
+
+            g.setColor(Color.black);
+            g.drawString("GC pauses", 2, fm.getAscent());
+            for (int i = 0; i < counts.length; i++) {
+                int y = fm.getHeight() + i * rowHeight;
+                String label = i < GcMonitor.HISTOGRAM_LIMITS.length
+                        ? "<" + GcMonitor.HISTOGRAM_LIMITS[i] + " ms"
+                        : ">=" + GcMonitor.HISTOGRAM_LIMITS[i - 1] + " ms";
+                g.setColor(Color.black);
+                g.drawString(label, 2, y + fm.getAscent());
+
+                int barWidth = (size.width - labelWidth - fm.stringWidth("000000") - 4) * counts[i] / max;
+                g.setColor(i < 4 ? Color.gray : Color.red);
+                g.fillRect(labelWidth, y + 2, barWidth, Math.max(1, rowHeight - 4));
+                g.setColor(Color.black);
+                g.drawString(String.valueOf(counts[i]), labelWidth + barWidth + 4, y + fm.getAscent());
+            }
+        }
+    }
+}
@@ -1,31 +1,52 @@
 package obsidiancore.launcher.console;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.CharBuffer;
 
-public class InputReader implements Runnable {
+public class InputReader implements Runnable, LineSplitter.LineHandler {
     private final InputStream inputStream;
-    private final ConsoleWindow console;
+    private final int stream;
+    private final OutputPipeline pipeline;
+    private final Thread thread;
 
-    public InputReader(InputStream inputStream, ConsoleWindow console) {
-        this.inputStream = inputStream;
-        this.console = console;
+    public InputReader(InputStream inputStream, final int stream, final OutputPipeline pipeline) {
+        //records the first byte in the launch timeline
+        this.inputStream = new FilterInputStream(inputStream) {
+            private boolean first = true;
 
-        Thread t = new Thread(this);
-        t.setDaemon(true);
-        t.start();
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (first && read > 0) {
+                    first = false;
+                    pipeline.getTimeline().mark(stream == OutputPipeline.STDERR ? LaunchTimeline.FIRST_STDERR_BYTE : LaunchTimeline.FIRST_STDOUT_BYTE);
+                }
+                return read;
+            }
+        };
+        this.stream = stream;
+        this.pipeline = pipeline;
+
+        thread = new Thread(this, stream == OutputPipeline.STDERR ? "Console stderr reader" : "Console stdout reader");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     public void run() {
         try {
-            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-            while ((line = br.readLine()) != null) {
-                console.appendLine(line);
-            }
+            new LineSplitter(inputStream, LineSplitter.getCharsetFromProperties(), this).run();
         } catch (IOException ignore) {
         }
+        pipeline.streamClosed(stream);
+    }
+
+    public void line(CharBuffer line) {
+        pipeline.line(stream, line);
+    }
+
+    //waits until the end of the stream was reached
+    public void join() throws InterruptedException {
+        thread.join();
     }
 }
@@ -0,0 +1,195 @@
+package obsidiancore.launcher.console;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+//Everything the console needs to launch the game.
+//It's either read from the Base64 encoded system properties and the command line (the old way)
+//or from a launch-spec file, which is UTF-8 text with one key=value per line:
+//  name=, java=, lock=, closeOnExit= and one arg= line for every argument of the game command (without the Java binary).
+//In values "\n" and "\r" stand for line breaks and "\\" for a backslash.
+//The spec is read from stdin if obsidiancore.launcher.spec is "stdin", otherwise the property is the Base64 encoded path of the file.
+
+public class LaunchSpec {
+    private static final int ARG_FILE_MIN_JAVA = 9;
+
+    private String name = "";
+    private String javaBin = "";
+    private String lockFile = "";
+    private boolean closeOnExit = false;
+    private final List args = new ArrayList(); //of String
+
+    private File argFile;
+
+    private LaunchSpec() {
+    }
+
+    public static LaunchSpec fromSystemProperties(String[] args) throws IOException {
+        String spec = System.getProperty("obsidiancore.launcher.spec");
+        if (spec != null) {
+            if ("stdin".equals(spec)) return read(System.in);
+
+            InputStream is = new FileInputStream(Decode(spec));
+            try {
+                return read(is);
+            } finally {
+                is.close();
+            }
+        }
+
+        LaunchSpec ls = new LaunchSpec();
+        ls.javaBin = Decode(System.getProperty("obsidiancore.launcher.java"));
+        ls.name = Decode(System.getProperty("obsidiancore.launcher.name"));
+        ls.lockFile = Decode(System.getProperty("obsidiancore.launcher.lock"));
+        ls.closeOnExit = "true".equals(System.getProperty("obsidiancore.launcher.closeOnExit"));
+        for (int i = 0; i < args.length; i++) {
+            ls.args.add(args[i]);
+        }
+        return ls;
+    }
+
+    //reads the spec until the end of the stream
+    public static LaunchSpec read(InputStream is) throws IOException {
+        LaunchSpec ls = new LaunchSpec();
+        BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            int eq = line.indexOf('=');
+            if (eq < 0) continue;
+            String key = line.substring(0, eq);
+            String value = unescape(line.substring(eq + 1));
+
+            if ("arg".equals(key)) ls.args.add(value);
+            else if ("name".equals(key)) ls.name = value;
+            else if ("java".equals(key)) ls.javaBin = value;
+            else if ("lock".equals(key)) ls.lockFile = value;
+            else if ("closeOnExit".equals(key)) ls.closeOnExit = "true".equals(value);
+        }
+        return ls;
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+
+        StringBuffer sb = new StringBuffer(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                if (next == 'n') sb.append('\n');
+                else if (next == 'r') sb.append('\r');
+                else sb.append(next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String Decode(String input) {
+        byte[] bytes = Base64.Decode(input);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e); //this is virtually impossible
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getJavaBin() {
+        return javaBin;
+    }
+
+    public String getLockFile() {
+        return lockFile;
+    }
+
+    public boolean isCloseOnExit() {
+        return closeOnExit;
+    }
+
+    //the arguments of the game command without the Java binary
+    public String[] getArgs() {
+        return (String[]) args.toArray(new String[args.size()]);
+    }
+
+    //the value that follows the first of the options, null if there is none of them
+    public String getOptionValue(String[] names) {
+        for (int i = 0; i < args.size() - 1; i++) {
+            for (int j = 0; j < names.length; j++) {
+                if (names[j].equals(args.get(i))) return (String) args.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    //adds options for the game JVM in front of all the other arguments
+    public void addJvmArgs(String[] jvmArgs) {
+        for (int i = jvmArgs.length - 1; i >= 0; i--) {
+            args.add(0, jvmArgs[i]);
+        }
+    }
+
+    //the game command including the Java binary
+    public String[] getCommand() {
+        String[] cmdArr = new String[args.size() + 1];
+        cmdArr[0] = javaBin;
+        for (int i = 0; i < args.size(); i++) {
+            cmdArr[i + 1] = (String) args.get(i);
+        }
+        return cmdArr;
+    }
+
+    //Same as getCommand(), but on Java 9+ the arguments are moved into an argument file so the command line stays short.
+    //The game runs on the same Java as the console, so the console's version decides.
+    //The Java launcher reads the file in the native encoding, so it's only used when all the arguments are ASCII.
+    public String[] getCommandWithArgFile() {
+        if (args.isEmpty() || Console.getJavaVersionDescriptive() < ARG_FILE_MIN_JAVA
+                || "false".equals(System.getProperty("obsidiancore.launcher.argFile"))) {
+            return getCommand();
+        }
+        for (int i = 0; i < args.size(); i++) {
+            String arg = (String) args.get(i);
+            for (int j = 0; j < arg.length(); j++) {
+                if (arg.charAt(j) > 0x7e) return getCommand();
+            }
+        }
+
+        try {
+            argFile = File.createTempFile("obsidiancore-args", ".txt");
+            argFile.deleteOnExit(); //the console outlives the game
+            Writer w = new OutputStreamWriter(new FileOutputStream(argFile), "US-ASCII");
+            try {
+                for (int i = 0; i < args.size(); i++) {
+                    w.write(quoteForArgFile((String) args.get(i)));
+                    w.write('\n');
+                }
+            } finally {
+                w.close();
+            }
+            return new String[]{javaBin, "@" + argFile.getPath()};
+        } catch (IOException e) {
+            if (argFile != null) argFile.delete();
+            argFile = null;
+            return getCommand();
+        }
+    }
+
+    private static String quoteForArgFile(String arg) {
+        StringBuffer sb = new StringBuffer(arg.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            if (c == '\\' || c == '"') sb.append('\\').append(c);
+            else if (c == '\n') sb.append("\\n");
+            else if (c == '\r') sb.append("\\r");
+            else sb.append(c);
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
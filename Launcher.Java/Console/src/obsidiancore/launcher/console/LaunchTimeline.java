@@ -0,0 +1,195 @@
+package obsidiancore.launcher.console;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+//Records the milestones of a launch with nanosecond timestamps so that slow launches can be compared.
+//Every milestone is only recorded the first time it happens.
+
+public class LaunchTimeline {
+    public static final String JVM_START = "Console JVM start";
+    public static final String CONSOLE_MAIN = "Console main";
+    public static final String PROCESS_STARTED = "Game process started";
+    public static final String FIRST_STDOUT_BYTE = "First stdout byte";
+    public static final String FIRST_STDERR_BYTE = "First stderr byte";
+    public static final String PROCESS_EXIT = "Game process exit";
+    public static final String OUTPUT_CLOSED = "Output streams closed";
+    public static final String MAIN_MENU = "Main menu (sound engine started)";
+
+    //log lines that mark the well known stages of a launch (Vanilla, FML for 1.2-1.12 and ModLauncher for 1.13+)
+    private static final String[][] MARKERS = new String[][]{
+            {"Setting user:", "Game: setting user"},
+            {"ModLauncher running", "ModLauncher: start"},
+            {"Launching target", "ModLauncher: launching target"},
+            {"Forge Mod Loader version", "FML: loader start"},
+            {"LWJGL Version", "LWJGL initialized"},
+            {"Attempting early MinecraftForge initialization", "FML: early initialization"},
+            {"Forge Mod Loader has identified", "FML: mods identified"},
+            {"Constructing mods", "FML: construction"},
+            {"Forge Mod Loader has successfully loaded", "FML: loading complete"},
+            {"Starting up SoundSystem", "Sound system starting"},
+            {"Sound engine started", MAIN_MENU},
+    };
+
+    private final long jvmStartMillis;
+    private final long referenceNanos; //System.nanoTime() at the moment the JVM started
+    private final List events = new ArrayList(); //of Event
+    private final boolean[] markerSeen = new boolean[MARKERS.length];
+    private volatile int markersLeft = MARKERS.length;
+    private int exitCode = -1;
+    private String classDataSharing = "off"; //or one of the CdsArchive modes
+
+    public LaunchTimeline() {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        referenceNanos = nowNanos - (nowMillis - jvmStartMillis) * 1000000L;
+
+        add(new Event(JVM_START, referenceNanos, jvmStartMillis));
+        add(new Event(CONSOLE_MAIN, nowNanos, nowMillis));
+    }
+
+    public void mark(String name) {
+        add(new Event(name, System.nanoTime(), System.currentTimeMillis()));
+    }
+
+    private synchronized void add(Event event) {
+        for (int i = 0; i < events.size(); i++) {
+            if (((Event) events.get(i)).name.equals(event.name)) return;
+        }
+        events.add(event);
+    }
+
+    public synchronized void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    public synchronized void setClassDataSharing(String classDataSharing) {
+        this.classDataSharing = classDataSharing;
+    }
+
+    //called from the reader threads for every line
+    public void checkMarkers(CharBuffer line) {
+        if (markersLeft == 0) return;
+        for (int i = 0; i < MARKERS.length; i++) {
+            if (!markerSeen[i] && contains(line, MARKERS[i][0])) {
+                synchronized (this) {
+                    if (markerSeen[i]) continue;
+                    markerSeen[i] = true;
+                    markersLeft--;
+                }
+                mark(MARKERS[i][1]);
+            }
+        }
+    }
+
+    private static boolean contains(CharBuffer line, String text) {
+        int len = line.remaining();
+        int textLen = text.length();
+        int pos = line.position();
+        char first = text.charAt(0);
+        outer:
+        for (int i = 0; i <= len - textLen; i++) {
+            if (line.get(pos + i) != first) continue;
+            for (int j = 1; j < textLen; j++) {
+                if (line.get(pos + i + j) != text.charAt(j)) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized long getMillisSinceJvmStart(String name) {
+        for (int i = 0; i < events.size(); i++) {
+            Event e = (Event) events.get(i);
+            if (e.name.equals(name)) return (e.nanos - referenceNanos) / 1000000L;
+        }
+        return -1;
+    }
+
+    //human readable lines for the console window
+    public synchronized String[] getSummary() {
+        String[] lines = new String[events.size() + 1];
+        lines[0] = "Launch timeline (ms since the console JVM started):";
+        for (int i = 0; i < events.size(); i++) {
+            Event e = (Event) events.get(i);
+            lines[i + 1] = "  " + pad((e.nanos - referenceNanos) / 1000000L) + "  " + e.name;
+        }
+        return lines;
+    }
+
+    private static String pad(long value) {
+        String s = String.valueOf(value);
+        while (s.length() < 8) s = " " + s;
+        return s;
+    }
+
+    public synchronized String toJson() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("{\n");
+        sb.append("  \"jvmStartEpochMillis\": ").append(jvmStartMillis).append(",\n");
+        sb.append("  \"javaVersion\": \"").append(escape(System.getProperty("java.version"))).append("\",\n");
+        sb.append("  \"exitCode\": ").append(exitCode).append(",\n");
+        sb.append("  \"classDataSharing\": \"").append(classDataSharing).append("\",\n");
+        sb.append("  \"events\": [");
+        for (int i = 0; i < events.size(); i++) {
+            Event e = (Event) events.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"name\": \"").append(escape(e.name)).append("\"");
+            sb.append(", \"sinceJvmStartNanos\": ").append(e.nanos - referenceNanos);
+            sb.append(", \"epochMillis\": ").append(e.epochMillis).append("}");
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        if (s == null) return "";
+        StringBuffer sb = new StringBuffer(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(' ');
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    //writes the timeline to launch-<date>.json in the given directory, returns the file or null if it failed
+    public File writeJson(File dir) {
+        File file = new File(dir, "launch-" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date(jvmStartMillis)) + ".json");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) return null;
+            Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                w.write(toJson());
+            } finally {
+                w.close();
+            }
+            return file;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class Event {
+        final String name;
+        final long nanos;
+        final long epochMillis;
+
+        Event(String name, long nanos, long epochMillis) {
+            this.name = name;
+            this.nanos = nanos;
+            this.epochMillis = epochMillis;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package obsidiancore.launcher.console;
+
+import java.awt.EventQueue;
+import java.awt.Label;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Collects the lines from the reader threads and hands them to the event queue at most once per frame.
+//The reader threads never block on the UI, they only add to a lock-free queue.
+//If the event queue can't keep up the lines are dropped (and counted) instead of filling the heap,
+//the window shows how many were dropped. The log file gets its lines separately, so it still has them.
+
+public class LineBatcher implements Runnable {
+    private static final int DEFAULT_FRAME_MILLIS = 25;
+    private static final int MAX_QUEUED_CHARS = 8 * 1024 * 1024;
+
+    private final LogView logView;
+    private final Label statusLabel;
+    private final int frameMillis;
+
+    private final ConcurrentLinkedQueue queue = new ConcurrentLinkedQueue();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong queuedChars = new AtomicLong();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final AtomicLong firstQueuedNanos = new AtomicLong();
+    private volatile boolean flushPending = false;
+
+    //statistics
+    private final AtomicLong linesTotal = new AtomicLong();
+    private volatile int linesPerSecond = 0;
+    private volatile long lastFlushLatencyNanos = 0;
+    private volatile long maxFlushLatencyNanos = 0;
+
+    //only used by the event queue
+    private long reportedDropped = 0;
+
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable statusTask = new Runnable() {
+        public void run() {
+            statusLabel.setText(getStatistics());
+            statusLabel.getParent().validate();
+        }
+    };
+
+    public LineBatcher(LogView logView, Label statusLabel) {
+        this.logView = logView;
+        this.statusLabel = statusLabel;
+
+        int millis = DEFAULT_FRAME_MILLIS;
+        try {
+            String val = System.getProperty("obsidiancore.launcher.console.frameMillis");
+            if (val != null) millis = Integer.parseInt(val);
+        } catch (NumberFormatException ignore) {
+        }
+        this.frameMillis = Math.max(1, millis);
+
+        Thread t = new Thread(this, "Console line batcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    //can be called from any thread
+    public void add(String line) {
+        linesTotal.incrementAndGet();
+        //the check and the add aren't atomic, the queue can get a few lines over the limit
+        if (queuedChars.get() + line.length() > MAX_QUEUED_CHARS) {
+            droppedLines.incrementAndGet();
+            return;
+        }
+        queuedChars.addAndGet(line.length());
+        firstQueuedNanos.compareAndSet(0, System.nanoTime());
+        queue.offer(line);
+        queueDepth.incrementAndGet();
+    }
+
+    public void run() {
+        long lastCount = 0;
+        long lastRateTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                Thread.sleep(frameMillis);
+
+                if (!flushPending && (queueDepth.get() > 0 || droppedLines.get() != reportedDropped)) {
+                    flushPending = true;
+                    EventQueue.invokeLater(flushTask);
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastRateTime >= 1000) {
+                    long count = linesTotal.get();
+                    linesPerSecond = (int) ((count - lastCount) * 1000 / (now - lastRateTime));
+                    lastCount = count;
+                    lastRateTime = now;
+                    if (statusLabel != null) EventQueue.invokeLater(statusTask);
+                }
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    //event queue method
+    private void flush() {
+        long queuedAt = firstQueuedNanos.getAndSet(0);
+
+        int n = queueDepth.get();
+        String[] lines = new String[n + 1];
+        int count = 0;
+        long chars = 0;
+        while (count < n) {
+            String line = (String) queue.poll();
+            if (line == null) break;
+            lines[count++] = line;
+            chars += line.length();
+        }
+        queueDepth.addAndGet(-count);
+        queuedChars.addAndGet(-chars);
+
+        long dropped = droppedLines.get();
+        if (dropped != reportedDropped) {
+            lines[count++] = "[Console] " + (dropped - reportedDropped) + " lines were not shown because the console could not keep up";
+            reportedDropped = dropped;
+        }
+
+        logView.getBuffer().addAll(lines, count);
+        logView.refresh();
+
+        if (queuedAt != 0) {
+            long latency = System.nanoTime() - queuedAt;
+            lastFlushLatencyNanos = latency;
+            if (latency > maxFlushLatencyNanos) maxFlushLatencyNanos = latency;
+        }
+        flushPending = false;
+    }
+
+    public long getLinesTotal() {
+        return linesTotal.get();
+    }
+
+    public int getLinesPerSecond() {
+        return linesPerSecond;
+    }
+
+    public long getDroppedLines() {
+        return droppedLines.get();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getLastFlushLatencyNanos() {
+        return lastFlushLatencyNanos;
+    }
+
+    public long getMaxFlushLatencyNanos() {
+        return maxFlushLatencyNanos;
+    }
+
+    public String getStatistics() {
+        long dropped = droppedLines.get();
+        return linesPerSecond + " lines/s, " + getQueueDepth() + " queued" + (dropped > 0 ? ", " + dropped + " dropped" : "") + ", flush "
+                + (lastFlushLatencyNanos / 1000000) + " ms (max " + (maxFlushLatencyNanos / 1000000) + " ms)";
+    }
+}
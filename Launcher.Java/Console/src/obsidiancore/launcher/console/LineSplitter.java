@@ -0,0 +1,113 @@
+package obsidiancore.launcher.console;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+//Splits a stream into lines by looking for '\n' in the raw bytes and decodes every line into a reused CharBuffer.
+//Nothing is allocated per line, the handler decides if it needs to turn the line into a String.
+//The charset must be ASCII compatible (UTF-8, ISO-8859-*, windows-125*, ...) so that '\n' can't be a part of a character.
+
+public class LineSplitter {
+    public static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final int INITIAL_SIZE = 8192;
+    private static final int MAX_LINE_SIZE = 1024 * 1024; //longer lines are split
+
+    public interface LineHandler {
+        //the buffer is only valid until the method returns
+        void line(CharBuffer line);
+    }
+
+    private final InputStream in;
+    private final CharsetDecoder decoder;
+    private final LineHandler handler;
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+    private CharBuffer charBuffer;
+
+    public LineSplitter(InputStream in, Charset charset, LineHandler handler) {
+        this.in = in;
+        this.handler = handler;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        allocateCharBuffer();
+    }
+
+    public static Charset getCharsetFromProperties() {
+        String name = System.getProperty("obsidiancore.launcher.console.charset");
+        try {
+            if (name != null) return Charset.forName(name);
+        } catch (IllegalArgumentException ignore) {
+        }
+        return Charset.forName(DEFAULT_CHARSET);
+    }
+
+    private void allocateCharBuffer() {
+        charBuffer = CharBuffer.allocate((int) (bytes.length * decoder.maxCharsPerByte()) + 1);
+    }
+
+    //reads until the end of the stream
+    public void run() throws IOException {
+        int start = 0; //start of the current line
+        int end = 0; //end of the valid data
+
+        while (true) {
+            if (end == bytes.length) {
+                if (start > 0) {
+                    //move the unfinished line to the start
+                    System.arraycopy(bytes, start, bytes, 0, end - start);
+                    end -= start;
+                    start = 0;
+                } else if (bytes.length < MAX_LINE_SIZE) {
+                    byte[] newBytes = new byte[Math.min(bytes.length * 2, MAX_LINE_SIZE)];
+                    System.arraycopy(bytes, 0, newBytes, 0, end);
+                    bytes = newBytes;
+                    byteBuffer = ByteBuffer.wrap(bytes);
+                    allocateCharBuffer();
+                } else {
+                    //the line is too long, emit what we have
+                    emit(0, end);
+                    start = end = 0;
+                }
+            }
+
+            int read = in.read(bytes, end, bytes.length - end);
+            if (read < 0) break;
+
+            int scan = end;
+            end += read;
+            for (int i = scan; i < end; i++) {
+                if (bytes[i] == '\n') {
+                    emit(start, i);
+                    start = i + 1;
+                }
+            }
+            if (start == end) start = end = 0;
+        }
+
+        if (end > start) emit(start, end);
+    }
+
+    private void emit(int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') end--;
+
+        byteBuffer.clear();
+        byteBuffer.limit(end);
+        byteBuffer.position(start);
+
+        charBuffer.clear();
+        decoder.reset();
+        decoder.decode(byteBuffer, charBuffer, true);
+        decoder.flush(charBuffer);
+        charBuffer.flip();
+
+        handler.line(charBuffer);
+    }
+}
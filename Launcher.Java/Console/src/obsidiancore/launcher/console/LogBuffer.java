@@ -0,0 +1,128 @@
+package obsidiancore.launcher.console;
+
+//Stores the captured lines in a fixed size ring.
+//The size is limited both in lines and in bytes (UTF-16 characters * 2), when either limit is reached the oldest lines are dropped.
+//Every line gets a sequence number that never changes so views can keep their position while old lines are dropped.
+//The lines are indexed as they are added so they can be filtered by level, thread, logger and text (see LogIndex).
+
+public class LogBuffer {
+    public static final int DEFAULT_MAX_LINES = 100000;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final String[] lines;
+    private final long maxBytes;
+
+    private int head = 0; //index of the oldest line in the ring
+    private int count = 0;
+    private long bytes = 0;
+    private long firstLineNumber = 0; //sequence number of the oldest line
+    private final LogIndex logIndex = new LogIndex();
+
+    public LogBuffer(int maxLines, long maxBytes) {
+        if (maxLines < 1) maxLines = 1;
+        this.lines = new String[maxLines];
+        this.maxBytes = maxBytes;
+    }
+
+    public static LogBuffer createFromProperties() {
+        int maxLines = DEFAULT_MAX_LINES;
+        long maxBytes = DEFAULT_MAX_BYTES;
+        try {
+            String val = System.getProperty("obsidiancore.launcher.console.maxLines");
+            if (val != null) maxLines = Integer.parseInt(val);
+            val = System.getProperty("obsidiancore.launcher.console.maxBytes");
+            if (val != null) maxBytes = Long.parseLong(val);
+        } catch (NumberFormatException ignore) {
+        }
+        return new LogBuffer(maxLines, maxBytes);
+    }
+
+    private static long sizeOf(String line) {
+        return line.length() * 2L;
+    }
+
+    public synchronized void add(String line) {
+        long size = sizeOf(line);
+        int dropped = 0;
+        while (count > 0 && (count == lines.length || bytes + size > maxBytes)) {
+            dropOldest();
+            dropped++;
+        }
+        if (dropped > 0) logIndex.evicted(dropped, firstLineNumber, count);
+        logIndex.add(firstLineNumber + count, line);
+        lines[(head + count) % lines.length] = line;
+        count++;
+        bytes += size;
+    }
+
+    public synchronized void addAll(String[] newLines, int n) {
+        for (int i = 0; i < n; i++) {
+            add(newLines[i]);
+        }
+    }
+
+    private void dropOldest() {
+        bytes -= sizeOf(lines[head]);
+        lines[head] = null;
+        head = (head + 1) % lines.length;
+        count--;
+        firstLineNumber++;
+    }
+
+    public synchronized void clear() {
+        while (count > 0) {
+            dropOldest();
+        }
+        head = 0;
+        logIndex.clear();
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getFirstLineNumber() {
+        return firstLineNumber;
+    }
+
+    public synchronized long getEndLineNumber() {
+        return firstLineNumber + count;
+    }
+
+    //returns the line with the given sequence number or null if it was already dropped
+    public synchronized String getLine(long lineNumber) {
+        long index = lineNumber - firstLineNumber;
+        if (index < 0 || index >= count) return null;
+        return lines[(int) ((head + index) % lines.length)];
+    }
+
+    //copies up to dest.length lines starting with the given sequence number, returns the number of lines copied
+    public synchronized int getLines(long fromLineNumber, String[] dest) {
+        long index = fromLineNumber - firstLineNumber;
+        if (index < 0) index = 0;
+        int n = 0;
+        while (n < dest.length && index < count) {
+            dest[n++] = lines[(int) ((head + index) % lines.length)];
+            index++;
+        }
+        return n;
+    }
+
+    //returns the sequence numbers of the lines from fromLineNumber on that match the query, in ascending order
+    public synchronized long[] query(LogQuery query, long fromLineNumber) {
+        return logIndex.query(query, this, fromLineNumber);
+    }
+
+    public synchronized String getText() {
+        StringBuffer sb = new StringBuffer((int) Math.min(Integer.MAX_VALUE, bytes / 2 + count));
+        for (int i = 0; i < count; i++) {
+            sb.append(lines[(head + i) % lines.length]);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
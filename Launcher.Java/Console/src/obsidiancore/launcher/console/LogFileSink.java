@@ -0,0 +1,284 @@
+package obsidiancore.launcher.console;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.zip.GZIPOutputStream;
+
+//Writes all captured lines to a session log file.
+//The reader threads only copy the characters into a pending buffer, a dedicated thread writes it out in large batches.
+//When a file grows over the size limit a new segment is started and the old one is gzipped in the background.
+
+public class LogFileSink implements Runnable {
+    private static final int MAX_PENDING_CHARS = 8 * 1024 * 1024; //lines are dropped (and counted) when the disk can't keep up
+    private static final long DEFAULT_MAX_FILE_SIZE = 16L * 1024 * 1024;
+    private static final int DEFAULT_MAX_SEGMENTS = 20;
+
+    private final File dir;
+    private final String baseName;
+    private final long maxFileSize;
+    private final int maxSegments;
+
+    private final Thread writerThread;
+    private Thread gzipThread;
+    private final LinkedList gzipQueue = new LinkedList(); //of File
+
+    //guarded by this
+    private char[] pending = new char[64 * 1024];
+    private int pendingLen = 0;
+    private long droppedLines = 0;
+    private boolean closed = false;
+
+    //only used by the writer thread
+    private char[] writing = new char[64 * 1024];
+    private int segment = 0;
+    private File currentFile;
+    private CountingOutputStream currentStream;
+    private Writer currentWriter;
+    private long reportedDropped = 0;
+
+    public LogFileSink(File dir, long maxFileSize, int maxSegments) {
+        this.dir = dir;
+        this.baseName = "console-" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date());
+        this.maxFileSize = maxFileSize;
+        this.maxSegments = Math.max(1, maxSegments);
+
+        writerThread = new Thread(this, "Console log writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                close();
+            }
+        }));
+    }
+
+    //returns null if logging to a file is disabled
+    public static LogFileSink createFromProperties() {
+        if ("false".equals(System.getProperty("obsidiancore.launcher.console.log"))) return null;
+
+        long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+        int maxSegments = DEFAULT_MAX_SEGMENTS;
+        try {
+            String val = System.getProperty("obsidiancore.launcher.console.logMaxSize");
+            if (val != null) maxFileSize = Long.parseLong(val);
+            val = System.getProperty("obsidiancore.launcher.console.logMaxSegments");
+            if (val != null) maxSegments = Integer.parseInt(val);
+        } catch (NumberFormatException ignore) {
+        }
+
+        return new LogFileSink(getLogDirFromProperties(), maxFileSize, maxSegments);
+    }
+
+    public static File getLogDirFromProperties() {
+        String dir = System.getProperty("obsidiancore.launcher.console.logDir");
+        if (dir == null) dir = "logs" + File.separator + "console";
+        return new File(System.getProperty("user.dir"), dir);
+    }
+
+    //can be called from any thread, the buffer is not modified
+    public void write(CharBuffer line) {
+        int len = line.remaining();
+        synchronized (this) {
+            if (!reserve(len + 1)) return;
+            line.mark();
+            line.get(pending, pendingLen, len);
+            line.reset();
+            pendingLen += len;
+            pending[pendingLen++] = '\n';
+            notify();
+        }
+    }
+
+    //can be called from any thread
+    public void write(String line) {
+        int len = line.length();
+        synchronized (this) {
+            if (!reserve(len + 1)) return;
+            line.getChars(0, len, pending, pendingLen);
+            pendingLen += len;
+            pending[pendingLen++] = '\n';
+            notify();
+        }
+    }
+
+    //must hold the lock
+    private boolean reserve(int len) {
+        if (closed || pendingLen + len > MAX_PENDING_CHARS) {
+            droppedLines++;
+            return false;
+        }
+        if (pendingLen + len > pending.length) {
+            char[] newPending = new char[Math.min(MAX_PENDING_CHARS, Math.max(pending.length * 2, pendingLen + len))];
+            System.arraycopy(pending, 0, newPending, 0, pendingLen);
+            pending = newPending;
+        }
+        return true;
+    }
+
+    //writes everything that is pending and stops the writer thread
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notify();
+        }
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    public synchronized long getDroppedLines() {
+        return droppedLines;
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                int len;
+                long dropped;
+                boolean last;
+                synchronized (this) {
+                    while (pendingLen == 0 && !closed) {
+                        wait();
+                    }
+                    //swap the buffers so the readers can continue while we write
+                    char[] tmp = writing;
+                    writing = pending;
+                    pending = tmp;
+                    len = pendingLen;
+                    pendingLen = 0;
+                    dropped = droppedLines;
+                    last = closed;
+                }
+
+                if (len > 0 || dropped != reportedDropped) writeBatch(len, dropped);
+                if (last) break;
+            }
+        } catch (InterruptedException ignore) {
+        } catch (IOException e) {
+            System.err.println("Writing the console log failed: " + e);
+        } finally {
+            closeCurrent();
+        }
+    }
+
+    private void writeBatch(int len, long dropped) throws IOException {
+        if (currentWriter == null) openSegment();
+
+        if (dropped != reportedDropped) {
+            currentWriter.write("[Console] " + (dropped - reportedDropped) + " lines were not written because the disk could not keep up\n");
+            reportedDropped = dropped;
+        }
+        currentWriter.write(writing, 0, len);
+        currentWriter.flush();
+
+        if (currentStream.getCount() >= maxFileSize) {
+            File finished = currentFile;
+            closeCurrent();
+            compressInBackground(finished);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+
+        segment++;
+        if (segment > maxSegments) {
+            File oldest = new File(dir, baseName + "-" + (segment - maxSegments) + ".log.gz");
+            if (!oldest.delete()) new File(dir, baseName + "-" + (segment - maxSegments) + ".log").delete();
+        }
+
+        currentFile = new File(dir, baseName + "-" + segment + ".log");
+        currentStream = new CountingOutputStream(new FileOutputStream(currentFile));
+        currentWriter = new OutputStreamWriter(new BufferedOutputStream(currentStream, 256 * 1024), "UTF-8");
+    }
+
+    private void closeCurrent() {
+        if (currentWriter != null) {
+            try {
+                currentWriter.close();
+            } catch (IOException ignore) {
+            }
+            currentWriter = null;
+            currentStream = null;
+        }
+    }
+
+    private void compressInBackground(File file) {
+        synchronized (gzipQueue) {
+            gzipQueue.addLast(file);
+            if (gzipThread == null) {
+                gzipThread = new Thread(new Runnable() {
+                    public void run() {
+                        compressQueued();
+                    }
+                }, "Console log compressor");
+                gzipThread.setDaemon(true);
+                gzipThread.setPriority(Thread.MIN_PRIORITY);
+                gzipThread.start();
+            }
+        }
+    }
+
+    private void compressQueued() {
+        byte[] buf = new byte[64 * 1024];
+        while (true) {
+            File file;
+            synchronized (gzipQueue) {
+                if (gzipQueue.isEmpty()) {
+                    gzipThread = null;
+                    return;
+                }
+                file = (File) gzipQueue.removeFirst();
+            }
+
+            File gzFile = new File(file.getPath() + ".gz");
+            try {
+                InputStream is = new FileInputStream(file);
+                try {
+                    OutputStream os = new GZIPOutputStream(new FileOutputStream(gzFile), buf.length);
+                    try {
+                        int read;
+                        while ((read = is.read(buf)) > 0) {
+                            os.write(buf, 0, read);
+                        }
+                    } finally {
+                        os.close();
+                    }
+                } finally {
+                    is.close();
+                }
+                file.delete();
+            } catch (IOException e) {
+                gzFile.delete(); //keep the uncompressed segment
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
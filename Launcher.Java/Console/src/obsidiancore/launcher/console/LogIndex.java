@@ -0,0 +1,322 @@
+package obsidiancore.launcher.console;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+//Parses every line once when it's added to the LogBuffer and keeps postings (sorted sequence numbers) of the lines
+//by level, thread and logger, and by the lower case words of the line for text search.
+//Lines with more words than are indexed or with a too long word are kept in a list of their own and are checked for every word.
+//A query intersects the postings starting with the shortest list, so it costs about as much as there are matches.
+//The words at the ends of the search text can be parts of longer words, they take the postings of all the indexed
+//words that end (first word) or start (last word) with them, a single word those of the words that contain it.
+//Understands the log4j layouts used by the game:
+//  "[12:34:56] [Render thread/INFO]: message", "[12:34:56] [main/INFO] [cpw.mods.modlauncher.Launcher/MODLAUNCHER]: message"
+//and the old FML one: "2014-01-01 12:34:56 [INFO] [ForgeModLoader] message".
+//Lines without a log4j header (stack traces, multi-line messages) get the fields of the line before them.
+//Not thread safe, it's guarded by the lock of its LogBuffer.
+
+public class LogIndex {
+    public static final String[] LEVELS = new String[]{"FATAL", "ERROR", "WARN", "INFO", "DEBUG", "TRACE"};
+
+    private static final int MIN_TOKEN = 2, MAX_TOKEN = 64, MAX_TOKENS_PER_LINE = 64;
+
+    private final PostingList[] byLevel = new PostingList[LEVELS.length];
+    private final Map byThread = new HashMap(); //lower case name -> PostingList
+    private final Map byLogger = new HashMap();
+    private final Map byToken = new HashMap();
+    private PostingList unindexed = new PostingList(); //lines with words that aren't in byToken
+    private final SortedSet sortedTokens = new TreeSet(); //of String, the keys of byToken for prefix lookups
+    private final SortedSet reversedTokens = new TreeSet(); //of String, reversed for suffix lookups
+
+    //fields of the last parsed line, for continuation lines
+    private int lastLevel = -1;
+    private String lastThread, lastLogger;
+
+    private long evictedSinceCompaction = 0;
+
+    public LogIndex() {
+        for (int i = 0; i < byLevel.length; i++) {
+            byLevel[i] = new PostingList();
+        }
+    }
+
+    public void add(long seq, String line) {
+        int level = -1;
+        String thread = null, logger = null;
+
+        int i = 0;
+        int len = line.length();
+
+        //timestamp
+        if (len > 0 && line.charAt(0) == '[') {
+            int end = line.indexOf(']');
+            if (end > 0 && end < 16 && isTime(line, 1, end)) i = skipSpace(line, end + 1);
+        } else if (len > 20 && line.charAt(4) == '-' && line.charAt(13) == ':' && Character.isDigit(line.charAt(0))) {
+            i = 20;
+        }
+
+        //[thread/LEVEL] or [LEVEL]
+        if (i < len && line.charAt(i) == '[') {
+            int end = line.indexOf(']', i);
+            if (end > i) {
+                String inner = line.substring(i + 1, end);
+                int slash = inner.lastIndexOf('/');
+                level = levelIndex(slash >= 0 ? inner.substring(slash + 1) : inner);
+                if (level >= 0) {
+                    if (slash >= 0) thread = inner.substring(0, slash);
+                    i = end + 1;
+
+                    //optional [logger] or [logger/MARKER]
+                    if (i + 1 < len && line.charAt(i) == ' ' && line.charAt(i + 1) == '[') {
+                        int loggerEnd = line.indexOf(']', i + 2);
+                        if (loggerEnd > 0) {
+                            logger = line.substring(i + 2, loggerEnd);
+                            int markerSlash = logger.indexOf('/');
+                            if (markerSlash >= 0) logger = logger.substring(0, markerSlash);
+                            i = loggerEnd + 1;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (level < 0) {
+            level = lastLevel;
+            thread = lastThread;
+            logger = lastLogger;
+        } else {
+            lastLevel = level;
+            lastThread = thread;
+            lastLogger = logger;
+        }
+
+        if (level >= 0) byLevel[level].add(seq);
+        if (thread != null) posting(byThread, thread.toLowerCase()).add(seq);
+        if (logger != null) posting(byLogger, logger.toLowerCase()).add(seq);
+        addTokens(seq, line);
+    }
+
+    private static boolean isTime(String line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (!Character.isDigit(c) && c != ':' && c != '.' && c != ',') return false;
+        }
+        return true;
+    }
+
+    private static int skipSpace(String line, int i) {
+        while (i < line.length() && line.charAt(i) == ' ') i++;
+        return i;
+    }
+
+    private static int levelIndex(String level) {
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i].equals(level)) return i;
+        }
+        //java.util.logging names used by old FML
+        if ("SEVERE".equals(level)) return 1;
+        if ("WARNING".equals(level)) return 2;
+        if ("FINE".equals(level) || "FINER".equals(level)) return 4;
+        if ("FINEST".equals(level)) return 5;
+        return -1;
+    }
+
+    private void addTokens(long seq, String text) {
+        int tokens = 0;
+        int i = 0;
+        int len = text.length();
+        while (i < len && tokens < MAX_TOKENS_PER_LINE) {
+            while (i < len && !isTokenChar(text.charAt(i))) i++;
+            int tokenStart = i;
+            while (i < len && isTokenChar(text.charAt(i))) i++;
+            int tokenLen = i - tokenStart;
+            if (tokenLen >= MIN_TOKEN && tokenLen <= MAX_TOKEN) {
+                String token = text.substring(tokenStart, i).toLowerCase();
+                PostingList list = (PostingList) byToken.get(token);
+                if (list == null) {
+                    list = new PostingList();
+                    byToken.put(token, list);
+                    sortedTokens.add(token);
+                    reversedTokens.add(reverse(token));
+                }
+                list.add(seq);
+                tokens++;
+            } else if (tokenLen > MAX_TOKEN) {
+                unindexed.add(seq);
+            }
+        }
+        if (i < len) unindexed.add(seq);
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static String reverse(String s) {
+        return new StringBuffer(s).reverse().toString();
+    }
+
+    private static PostingList posting(Map map, String key) {
+        PostingList list = (PostingList) map.get(key);
+        if (list == null) {
+            list = new PostingList();
+            map.put(key, list);
+        }
+        return list;
+    }
+
+    //called after lines were dropped from the buffer, firstLineNumber is the oldest line that's still there
+    public void evicted(int lines, long firstLineNumber, int linesLeft) {
+        evictedSinceCompaction += lines;
+        if (evictedSinceCompaction > Math.max(1024, linesLeft / 2)) {
+            compact(firstLineNumber);
+            evictedSinceCompaction = 0;
+        }
+    }
+
+    private void compact(long firstLineNumber) {
+        for (int i = 0; i < byLevel.length; i++) {
+            byLevel[i].trimBelow(firstLineNumber);
+        }
+        compact(byThread, firstLineNumber);
+        compact(byLogger, firstLineNumber);
+        unindexed.trimBelow(firstLineNumber);
+        for (Iterator it = byToken.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            PostingList list = (PostingList) entry.getValue();
+            list.trimBelow(firstLineNumber);
+            if (list.size() == 0) {
+                it.remove();
+                sortedTokens.remove(entry.getKey());
+                reversedTokens.remove(reverse((String) entry.getKey()));
+            }
+        }
+    }
+
+    private static void compact(Map map, long firstLineNumber) {
+        for (Iterator it = map.values().iterator(); it.hasNext(); ) {
+            PostingList list = (PostingList) it.next();
+            list.trimBelow(firstLineNumber);
+            if (list.size() == 0) it.remove();
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < byLevel.length; i++) {
+            byLevel[i] = new PostingList();
+        }
+        byThread.clear();
+        byLogger.clear();
+        byToken.clear();
+        unindexed = new PostingList();
+        sortedTokens.clear();
+        reversedTokens.clear();
+        lastLevel = -1;
+        lastThread = lastLogger = null;
+        evictedSinceCompaction = 0;
+    }
+
+    //returns the sequence numbers of the matching lines from fromLineNumber on in ascending order
+    public long[] query(LogQuery query, LogBuffer buffer, long fromLineNumber) {
+        long first = Math.max(fromLineNumber, buffer.getFirstLineNumber());
+        long end = buffer.getEndLineNumber();
+
+        List lists = new ArrayList(); //of PostingList, all of them have to contain the line
+        if (query.getLevel() != null) {
+            int level = levelIndex(query.getLevel().toUpperCase());
+            if (level < 0) return new long[0];
+            lists.add(byLevel[level]);
+        }
+        if (query.getThread() != null) {
+            PostingList list = (PostingList) byThread.get(query.getThread().toLowerCase());
+            if (list == null) return new long[0];
+            lists.add(list);
+        }
+        if (query.getLogger() != null) {
+            PostingList list = (PostingList) byLogger.get(query.getLogger().toLowerCase());
+            if (list == null) return new long[0];
+            lists.add(list);
+        }
+
+        String text = query.getText() != null ? query.getText().toLowerCase() : null;
+        if (text != null) {
+            int i = 0;
+            while (i < text.length()) {
+                while (i < text.length() && !isTokenChar(text.charAt(i))) i++;
+                int tokenStart = i;
+                while (i < text.length() && isTokenChar(text.charAt(i))) i++;
+                int tokenLen = i - tokenStart;
+                if (tokenLen < MIN_TOKEN || tokenLen > MAX_TOKEN) continue;
+                String token = text.substring(tokenStart, i);
+                boolean openStart = tokenStart == 0, openEnd = i == text.length();
+                List matches = new ArrayList(); //of PostingList, the line has to be in one of them
+                if (openStart || openEnd) {
+                    addPartialPostings(matches, token, openStart, openEnd);
+                } else if (byToken.containsKey(token)) {
+                    matches.add(byToken.get(token));
+                }
+                if (unindexed.size() > 0) matches.add(unindexed);
+                if (matches.isEmpty()) return new long[0];
+                lists.add(matches.size() == 1 ? matches.get(0) : PostingList.union(matches, first));
+            }
+        }
+
+        PostingList.LongArray result = new PostingList.LongArray();
+        if (lists.isEmpty()) {
+            //nothing indexed to go by, check every line
+            for (long seq = first; seq < end; seq++) {
+                if (matchesText(buffer.getLine(seq), text)) result.add(seq);
+            }
+            return result.toArray();
+        }
+
+        //drive with the shortest list and look the others up
+        PostingList driver = (PostingList) lists.get(0);
+        for (int i = 1; i < lists.size(); i++) {
+            PostingList list = (PostingList) lists.get(i);
+            if (list.size() < driver.size()) driver = list;
+        }
+
+        int[] cursors = new int[lists.size()];
+        for (int i = driver.lowerBound(first, 0); i < driver.size(); i++) {
+            long seq = driver.get(i);
+            boolean all = true;
+            for (int j = 0; j < lists.size() && all; j++) {
+                PostingList list = (PostingList) lists.get(j);
+                if (list == driver) continue;
+                cursors[j] = list.lowerBound(seq, cursors[j]);
+                all = cursors[j] < list.size() && list.get(cursors[j]) == seq;
+            }
+            if (all && (text == null || matchesText(buffer.getLine(seq), text))) result.add(seq);
+        }
+        return result.toArray();
+    }
+
+    //the postings of the words that the fragment of a word is the end (openStart), the start (openEnd) or any part (both) of
+    private void addPartialPostings(List matches, String fragment, boolean openStart, boolean openEnd) {
+        if (openStart && openEnd) {
+            for (Iterator it = byToken.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) it.next();
+                if (((String) entry.getKey()).indexOf(fragment) >= 0) matches.add(entry.getValue());
+            }
+        } else {
+            SortedSet set = openEnd ? sortedTokens : reversedTokens;
+            String prefix = openEnd ? fragment : reverse(fragment);
+            for (Iterator it = set.tailSet(prefix).iterator(); it.hasNext(); ) {
+                String token = (String) it.next();
+                if (!token.startsWith(prefix)) break;
+                matches.add(byToken.get(openEnd ? token : reverse(token)));
+            }
+        }
+    }
+
+    private static boolean matchesText(String line, String lowerText) {
+        if (line == null) return false;
+        return lowerText == null || line.toLowerCase().indexOf(lowerText) >= 0;
+    }
+}
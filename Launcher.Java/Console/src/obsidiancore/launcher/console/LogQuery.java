@@ -0,0 +1,43 @@
+package obsidiancore.launcher.console;
+
+//A filter for the console lines. Empty fields match everything, all the fields that are set have to match.
+
+public class LogQuery {
+    private final String level; //one of LogIndex.LEVELS or null
+    private final String thread;
+    private final String logger;
+    private final String text;
+
+    public LogQuery(String level, String thread, String logger, String text) {
+        this.level = emptyToNull(level);
+        this.thread = emptyToNull(thread);
+        this.logger = emptyToNull(logger);
+        this.text = emptyToNull(text);
+    }
+
+    private static String emptyToNull(String s) {
+        if (s == null) return null;
+        s = s.trim();
+        return s.length() == 0 ? null : s;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public String getLogger() {
+        return logger;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isEmpty() {
+        return level == null && thread == null && logger == null && text == null;
+    }
+}
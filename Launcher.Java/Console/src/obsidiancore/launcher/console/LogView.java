@@ -0,0 +1,265 @@
+package obsidiancore.launcher.console;
+
+import java.awt.*;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+
+//Displays the contents of a LogBuffer. Only the lines that are visible are ever rendered.
+//While scrolled to the bottom the view follows new lines, otherwise it keeps its position.
+//With a query set only the matching lines are shown, new lines are matched as they arrive.
+
+public class LogView extends Panel implements AdjustmentListener, MouseWheelListener, ComponentListener {
+    private static final int COLUMNS = 80, ROWS = 30;
+
+    private final LogBuffer buffer;
+    private final LogCanvas canvas;
+    private final Scrollbar vScroll, hScroll;
+
+    private long topLine = 0; //sequence number of the first visible line
+    private boolean followTail = true;
+    private int maxLineWidth = 0;
+
+    //filtered mode
+    private LogQuery query;
+    private long[] matches = new long[0]; //sequence numbers of the matching lines
+    private int matchCount = 0;
+    private long matchedEnd = 0; //lines before this sequence number were already matched
+
+    public LogView(LogBuffer buffer) {
+        this.buffer = buffer;
+
+        setLayout(new BorderLayout());
+        setFont(new Font("Monospaced", Font.PLAIN, 12));
+
+        canvas = new LogCanvas();
+        canvas.addMouseWheelListener(this);
+        canvas.addComponentListener(this);
+        add(canvas, BorderLayout.CENTER);
+
+        vScroll = new Scrollbar(Scrollbar.VERTICAL);
+        vScroll.addAdjustmentListener(this);
+        add(vScroll, BorderLayout.EAST);
+
+        hScroll = new Scrollbar(Scrollbar.HORIZONTAL);
+        hScroll.addAdjustmentListener(this);
+        add(hScroll, BorderLayout.SOUTH);
+    }
+
+    public LogBuffer getBuffer() {
+        return buffer;
+    }
+
+    //shows only the lines matching the query, null or an empty query shows everything again
+    public void setQuery(LogQuery query) {
+        this.query = query != null && !query.isEmpty() ? query : null;
+        matches = new long[0];
+        matchCount = 0;
+        matchedEnd = 0;
+        followTail = true;
+        refresh();
+    }
+
+    public LogQuery getQuery() {
+        return query;
+    }
+
+    //the number of lines shown, -1 if not filtered
+    public int getMatchCount() {
+        return query != null ? matchCount : -1;
+    }
+
+    //must be called on the event queue after the buffer was modified
+    public void refresh() {
+        int rows = getVisibleRows();
+        long first = buffer.getFirstLineNumber();
+
+        if (query != null) updateMatches(first);
+        int total = getTotalRows(first);
+        int position = getPosition(topLine, first);
+
+        if (followTail) position = total - rows;
+        if (position > total - rows) position = total - rows;
+        if (position < 0) position = 0;
+        topLine = getLineAt(position, first);
+
+        vScroll.setValues(position, rows, 0, Math.max(rows, total));
+        vScroll.setBlockIncrement(Math.max(1, rows - 1));
+
+        int width = canvas.getSize().width;
+        hScroll.setValues(Math.min(hScroll.getValue(), Math.max(0, maxLineWidth - width)), width, 0, Math.max(width, maxLineWidth));
+        hScroll.setBlockIncrement(Math.max(1, width / 2));
+
+        canvas.repaint();
+    }
+
+    //matches the lines that were added since the last refresh and forgets the ones that were dropped
+    private void updateMatches(long first) {
+        long[] newMatches;
+        synchronized (buffer) {
+            newMatches = buffer.query(query, matchedEnd);
+            matchedEnd = buffer.getEndLineNumber();
+        }
+
+        int dropped = 0;
+        while (dropped < matchCount && matches[dropped] < first) dropped++;
+        if (matchCount - dropped + newMatches.length > matches.length) {
+            long[] newArray = new long[Math.max(16, (matchCount - dropped + newMatches.length) * 3 / 2)];
+            System.arraycopy(matches, dropped, newArray, 0, matchCount - dropped);
+            matches = newArray;
+        } else if (dropped > 0) {
+            System.arraycopy(matches, dropped, matches, 0, matchCount - dropped);
+        }
+        matchCount -= dropped;
+        System.arraycopy(newMatches, 0, matches, matchCount, newMatches.length);
+        matchCount += newMatches.length;
+    }
+
+    private int getTotalRows(long first) {
+        return query != null ? matchCount : (int) (buffer.getEndLineNumber() - first);
+    }
+
+    //the scroll position of the line with the given sequence number
+    private int getPosition(long line, long first) {
+        if (query == null) return (int) (line - first);
+        int lo = 0, hi = matchCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (matches[mid] < line) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    //the sequence number of the line at the given scroll position
+    private long getLineAt(int position, long first) {
+        if (query == null) return first + position;
+        if (position < matchCount) return matches[position];
+        return matchedEnd;
+    }
+
+    public void clear() {
+        buffer.clear();
+        matchCount = 0;
+        matchedEnd = buffer.getEndLineNumber();
+        topLine = buffer.getFirstLineNumber();
+        followTail = true;
+        maxLineWidth = 0;
+        refresh();
+    }
+
+    public void setFont(Font f) {
+        super.setFont(f);
+        if (canvas != null) {
+            maxLineWidth = 0;
+            refresh();
+        }
+    }
+
+    private int getVisibleRows() {
+        int lineHeight = getFontMetrics(getFont()).getHeight();
+        return Math.max(1, canvas.getSize().height / lineHeight);
+    }
+
+    public void adjustmentValueChanged(AdjustmentEvent e) {
+        if (e.getSource() == vScroll) {
+            topLine = getLineAt(vScroll.getValue(), buffer.getFirstLineNumber());
+            followTail = vScroll.getValue() + vScroll.getVisibleAmount() >= vScroll.getMaximum();
+        }
+        canvas.repaint();
+    }
+
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        int value = vScroll.getValue() + e.getUnitsToScroll();
+        value = Math.max(0, Math.min(value, vScroll.getMaximum() - vScroll.getVisibleAmount()));
+        vScroll.setValue(value);
+        topLine = getLineAt(value, buffer.getFirstLineNumber());
+        followTail = value + vScroll.getVisibleAmount() >= vScroll.getMaximum();
+        canvas.repaint();
+    }
+
+    public void componentResized(ComponentEvent e) {
+        refresh();
+    }
+
+    public void componentMoved(ComponentEvent e) {
+    }
+
+    public void componentShown(ComponentEvent e) {
+    }
+
+    public void componentHidden(ComponentEvent e) {
+    }
+
+    private class LogCanvas extends Canvas {
+        private Image offscreen;
+        private String[] visible = new String[0];
+
+        public Dimension getPreferredSize() {
+            FontMetrics fm = getFontMetrics(getFont());
+            return new Dimension(fm.charWidth('m') * COLUMNS, fm.getHeight() * ROWS);
+        }
+
+        public void update(Graphics g) {
+            paint(g); //everything is repainted anyway, clearing first only causes flicker
+        }
+
+        public void paint(Graphics g) {
+            Dimension size = getSize();
+            if (size.width <= 0 || size.height <= 0) return;
+
+            if (offscreen == null || offscreen.getWidth(null) != size.width || offscreen.getHeight(null) != size.height) {
+                offscreen = createImage(size.width, size.height);
+                if (offscreen == null) return;
+            }
+
+            Graphics og = offscreen.getGraphics();
+            try {
+                og.setColor(Color.white);
+                og.fillRect(0, 0, size.width, size.height);
+                og.setColor(Color.black);
+                og.setFont(getFont());
+
+                FontMetrics fm = og.getFontMetrics();
+                int rows = size.height / fm.getHeight() + 1;
+                if (visible.length != rows) visible = new String[rows];
+
+                int n;
+                if (query == null) {
+                    n = buffer.getLines(topLine, visible);
+                } else {
+                    n = 0;
+                    for (int i = getPosition(topLine, buffer.getFirstLineNumber()); i < matchCount && n < rows; i++) {
+                        String line = buffer.getLine(matches[i]);
+                        if (line != null) visible[n++] = line;
+                    }
+                }
+                int x = 2 - hScroll.getValue();
+                int y = fm.getAscent();
+                boolean widthChanged = false;
+                for (int i = 0; i < n; i++) {
+                    String line = visible[i];
+                    int lineWidth = fm.stringWidth(line) + 4;
+                    if (lineWidth > maxLineWidth) {
+                        maxLineWidth = lineWidth;
+                        widthChanged = true;
+                    }
+                    og.drawString(line, x, y);
+                    y += fm.getHeight();
+                    visible[i] = null;
+                }
+
+                if (widthChanged) {
+                    hScroll.setValues(hScroll.getValue(), size.width, 0, Math.max(size.width, maxLineWidth));
+                }
+            } finally {
+                og.dispose();
+            }
+
+            g.drawImage(offscreen, 0, 0, null);
+        }
+    }
+}
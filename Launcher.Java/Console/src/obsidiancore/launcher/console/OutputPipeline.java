@@ -0,0 +1,53 @@
+package obsidiancore.launcher.console;
+
+import java.nio.CharBuffer;
+
+//Routes the lines read from the game process to the log file and the console window.
+
+public class OutputPipeline {
+    public static final int STDOUT = 0, STDERR = 1;
+
+    private final OutputTarget target;
+    private final LogFileSink logSink;
+    private final LaunchTimeline timeline;
+    private final RepeatFilter[] filters;
+
+    public OutputPipeline(OutputTarget target, LogFileSink logSink, LaunchTimeline timeline) {
+        this.target = target;
+        this.logSink = logSink;
+        this.timeline = timeline;
+
+        if (target != null && !"false".equals(System.getProperty("obsidiancore.launcher.console.fold"))) {
+            filters = new RepeatFilter[]{new RepeatFilter("stdout", target), new RepeatFilter("stderr", target)};
+        } else {
+            filters = null;
+        }
+    }
+
+    public LaunchTimeline getTimeline() {
+        return timeline;
+    }
+
+    public LogFileSink getLogSink() {
+        return logSink;
+    }
+
+    //called from the reader threads
+    public void line(int stream, CharBuffer line) {
+        timeline.checkMarkers(line);
+        if (logSink != null) logSink.write(line);
+        if (filters != null) filters[stream].line(line);
+        else if (target != null) target.appendLine(line.toString());
+    }
+
+    //called from the reader thread when its stream ended
+    public void streamClosed(int stream) {
+        if (filters != null) filters[stream].flush();
+    }
+
+    //for messages that don't come from the game
+    public void message(String line) {
+        if (logSink != null) logSink.write(line);
+        if (target != null) target.appendLine(line);
+    }
+}
@@ -0,0 +1,8 @@
+package obsidiancore.launcher.console;
+
+//Receives the lines captured from the game process, implemented by the console window.
+//Kept as an interface so that the headless mode never loads any AWT classes.
+
+public interface OutputTarget {
+    void appendLine(String line);
+}
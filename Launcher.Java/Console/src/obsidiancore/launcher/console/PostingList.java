@@ -0,0 +1,109 @@
+package obsidiancore.launcher.console;
+
+import java.util.Arrays;
+import java.util.List;
+
+//Sorted sequence numbers of the lines that contain a term. Lines are only ever added in ascending order.
+
+class PostingList {
+    private long[] values = new long[4];
+    private int start = 0; //values before start were trimmed
+    private int end = 0;
+
+    void add(long seq) {
+        if (end > start && values[end - 1] == seq) return; //the same term twice on one line
+        if (end == values.length) {
+            int size = end - start;
+            long[] newValues = size * 2 <= values.length ? values : new long[values.length * 2];
+            System.arraycopy(values, start, newValues, 0, size);
+            values = newValues;
+            start = 0;
+            end = size;
+        }
+        values[end++] = seq;
+    }
+
+    int size() {
+        return end - start;
+    }
+
+    long get(int index) {
+        return values[start + index];
+    }
+
+    //index of the first value >= seq, searching from index from
+    int lowerBound(long seq, int from) {
+        int lo = start + from, hi = end;
+        //gallop first, the value is usually close
+        int step = 1;
+        while (lo + step < hi && values[lo + step] < seq) {
+            lo += step;
+            step *= 2;
+        }
+        hi = Math.min(hi, lo + step + 1);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < seq) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo - start;
+    }
+
+    void trimBelow(long seq) {
+        start += lowerBound(seq, 0);
+        if (start == end) start = end = 0;
+        else if (start > values.length / 2 && values.length > 64) {
+            long[] newValues = new long[Math.max(4, (end - start) * 2)];
+            System.arraycopy(values, start, newValues, 0, end - start);
+            values = newValues;
+            end -= start;
+            start = 0;
+        }
+    }
+
+    //the values from seq first on that are in any of the lists
+    static PostingList union(List lists, long first) { //of PostingList
+        int size = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            PostingList list = (PostingList) lists.get(i);
+            size += list.size() - list.lowerBound(first, 0);
+        }
+        long[] all = new long[size];
+        int pos = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            PostingList list = (PostingList) lists.get(i);
+            int from = list.start + list.lowerBound(first, 0);
+            System.arraycopy(list.values, from, all, pos, list.end - from);
+            pos += list.end - from;
+        }
+        Arrays.sort(all);
+
+        PostingList union = new PostingList();
+        union.values = new long[Math.max(4, size)];
+        for (int i = 0; i < size; i++) {
+            union.add(all[i]); //skips the lines that are in more than one list
+        }
+        return union;
+    }
+
+    //growable array for query results
+    static class LongArray {
+        private long[] values = new long[16];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                long[] newValues = new long[size * 2];
+                System.arraycopy(values, 0, newValues, 0, size);
+                values = newValues;
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            long[] result = new long[size];
+            System.arraycopy(values, 0, result, 0, size);
+            return result;
+        }
+    }
+}
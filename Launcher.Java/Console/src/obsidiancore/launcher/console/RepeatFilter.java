@@ -0,0 +1,141 @@
+package obsidiancore.launcher.console;
+
+import java.nio.CharBuffer;
+
+//Keeps log floods out of the console window, the log file still gets every line.
+//Consecutive lines that are the same once the timestamp is stripped are folded into one line with a repeat counter
+//and there's a limit on how many lines per second are shown. One instance per stream, only used by its reader thread.
+
+public class RepeatFilter {
+    private static final int DEFAULT_MAX_LINES_PER_SECOND = 5000;
+    private static final long REPORT_MILLIS = 2000; //how often the counter of a run that doesn't end is shown
+    private static final int MAX_PREFIX = 32;
+
+    private final String streamName;
+    private final OutputTarget target;
+    private final int maxLinesPerSecond;
+
+    //the previous line without the timestamp
+    private char[] previous = new char[256];
+    private int previousLen = -1;
+    private int repeats = 0;
+    private long runReportedAt = 0;
+
+    private long windowStart = 0;
+    private int windowLines = 0;
+    private int windowDropped = 0;
+
+    private long totalFolded = 0;
+    private long totalDropped = 0;
+
+    public RepeatFilter(String streamName, OutputTarget target) {
+        this.streamName = streamName;
+        this.target = target;
+
+        int max = DEFAULT_MAX_LINES_PER_SECOND;
+        try {
+            String val = System.getProperty("obsidiancore.launcher.console.maxLinesPerSecond");
+            if (val != null) max = Integer.parseInt(val);
+        } catch (NumberFormatException ignore) {
+        }
+        this.maxLinesPerSecond = max; //0 or less means no limit
+    }
+
+    public void line(CharBuffer line) {
+        long now = System.currentTimeMillis();
+
+        int start = skipTimestamp(line);
+        int len = line.limit() - start;
+        if (isRepeat(line, start, len)) {
+            repeats++;
+            totalFolded++;
+            if (now - runReportedAt >= REPORT_MILLIS) {
+                reportRepeats();
+                runReportedAt = now;
+            }
+            return;
+        }
+
+        reportRepeats();
+        runReportedAt = now;
+
+        if (maxLinesPerSecond > 0) {
+            if (now - windowStart >= 1000) {
+                reportDropped();
+                windowStart = now;
+                windowLines = 0;
+            }
+            if (++windowLines > maxLinesPerSecond) {
+                windowDropped++;
+                totalDropped++;
+                //only a shown line can be repeated, the next copy of this one goes through the limit again
+                previousLen = -1;
+                return;
+            }
+        }
+
+        remember(line, start, len);
+        target.appendLine(line.toString());
+    }
+
+    //called when the stream ended
+    public void flush() {
+        reportRepeats();
+        reportDropped();
+    }
+
+    public long getTotalFolded() {
+        return totalFolded;
+    }
+
+    public long getTotalDropped() {
+        return totalDropped;
+    }
+
+    private void reportRepeats() {
+        if (repeats > 0) {
+            target.appendLine("    [previous line repeated " + repeats + (repeats == 1 ? " time]" : " times]"));
+            repeats = 0;
+        }
+    }
+
+    private void reportDropped() {
+        if (windowDropped > 0) {
+            target.appendLine("[Console] " + windowDropped + " lines from " + streamName + " were not shown, the rate limit is "
+                    + maxLinesPerSecond + " lines per second (the log file has them)");
+            windowDropped = 0;
+        }
+    }
+
+    //skips a leading "[12:34:56] " or "2014-01-01 12:34:56 " and returns the position after it
+    private static int skipTimestamp(CharBuffer line) {
+        int pos = line.position();
+        int limit = Math.min(line.limit(), pos + MAX_PREFIX);
+        int i = pos;
+        while (i < limit) {
+            char c = line.get(i);
+            if ((c >= '0' && c <= '9') || c == ':' || c == '-' || c == '.' || c == ',' || c == ' ' || c == '[' || c == ']') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i < limit ? i : pos;
+    }
+
+    private boolean isRepeat(CharBuffer line, int start, int len) {
+        if (len != previousLen) return false;
+        for (int i = 0; i < len; i++) {
+            if (line.get(start + i) != previous[i]) return false;
+        }
+        return true;
+    }
+
+    private void remember(CharBuffer line, int start, int len) {
+        if (len > previous.length) previous = new char[Math.max(len, previous.length * 2)];
+        for (int i = 0; i < len; i++) {
+            previous[i] = line.get(start + i);
+        }
+        previousLen = len;
+    }
+}
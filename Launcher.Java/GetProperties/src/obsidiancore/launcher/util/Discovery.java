@@ -0,0 +1,339 @@
+package obsidiancore.launcher.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//Finds the Java installations in the usual places and in the given directories without starting any of them.
+//The version and the vendor are read from the "release" file of the installation, the architecture from the header
+//of the java binary (ELF, PE or Mach-O). The installations are looked at in parallel.
+//The output is "candidates=<n>" and for every installation "candidate.<i>.<key>=<value>" lines with the keys
+//binary, java.home, java.version, java.runtime.version, java.vendor, os.name, os.arch and binary.format.
+//Installations without a release file (before Java 8) have no version, only the architecture.
+
+class Discovery {
+    private static final int THREADS = 8;
+
+    private Discovery() {
+    }
+
+    static void run(String[] roots, PrintStream out) {
+        List dirs = new ArrayList(); //of File
+        for (int i = 0; i < roots.length; i++) {
+            dirs.add(new File(roots[i]));
+        }
+        addDefaultRoots(dirs);
+
+        //every root, everything in it and the macOS bundle layout
+        final List homes = new ArrayList(); //of File
+        runParallel(dirs, new Task() {
+            public void run(Object item) {
+                File root = (File) item;
+                List found = new ArrayList();
+                found.add(root);
+                File[] children = root.listFiles();
+                if (children != null) {
+                    for (int i = 0; i < children.length; i++) {
+                        found.add(children[i]);
+                        found.add(new File(children[i], "Contents" + File.separator + "Home"));
+                    }
+                }
+                synchronized (homes) {
+                    homes.addAll(found);
+                }
+            }
+        });
+
+        //the same installation can be found through more than one root or link
+        List candidates = new ArrayList(); //of Candidate
+        Set binaries = new HashSet();
+        for (int i = 0; i < homes.size(); i++) {
+            File bin = getBinary((File) homes.get(i));
+            if (bin != null && binaries.add(bin.getPath())) candidates.add(new Candidate(bin));
+        }
+
+        runParallel(candidates, new Task() {
+            public void run(Object item) {
+                ((Candidate) item).inspect();
+            }
+        });
+
+        Collections.sort(candidates, new Comparator() {
+            public int compare(Object a, Object b) {
+                return ((Candidate) a).binary.getPath().compareTo(((Candidate) b).binary.getPath());
+            }
+        });
+        out.println("candidates=" + candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            ((Candidate) candidates.get(i)).print("candidate." + i + ".", out);
+        }
+    }
+
+    private static void addDefaultRoots(List dirs) {
+        String home = System.getProperty("user.home");
+        String os = System.getProperty("os.name").toLowerCase();
+        if (os.startsWith("windows")) {
+            String[] vendors = {"Java", "Eclipse Adoptium", "Eclipse Foundation", "AdoptOpenJDK", "Zulu", "Amazon Corretto", "Microsoft", "BellSoft", "Semeru"};
+            String[] programFiles = {getEnv("ProgramFiles"), getEnv("ProgramFiles(x86)"), getEnv("ProgramW6432")};
+            for (int i = 0; i < programFiles.length; i++) {
+                if (programFiles[i] == null) continue;
+                for (int j = 0; j < vendors.length; j++) {
+                    dirs.add(new File(programFiles[i], vendors[j]));
+                }
+            }
+        } else if (os.startsWith("mac")) {
+            dirs.add(new File("/Library/Java/JavaVirtualMachines"));
+            dirs.add(new File(home, "Library/Java/JavaVirtualMachines"));
+        } else {
+            dirs.add(new File("/usr/lib/jvm"));
+            dirs.add(new File("/usr/lib64/jvm"));
+            dirs.add(new File("/usr/java"));
+            dirs.add(new File("/usr/local/java"));
+            dirs.add(new File("/opt/java"));
+            dirs.add(new File("/opt/jdk"));
+        }
+        dirs.add(new File(home, ".jdks"));
+        dirs.add(new File(home, ".sdkman" + File.separator + "candidates" + File.separator + "java"));
+
+        String javaHome = getEnv("JAVA_HOME");
+        if (javaHome != null) dirs.add(new File(javaHome));
+        dirs.add(new File(System.getProperty("java.home")));
+    }
+
+    //System.getenv() throws an Error before Java 5
+    private static String getEnv(String name) {
+        try {
+            return System.getenv(name);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static File getBinary(File home) {
+        File bin = new File(home, "bin" + File.separator + "java.exe");
+        if (!bin.isFile()) bin = new File(home, "bin" + File.separator + "java");
+        if (!bin.isFile()) return null;
+        try {
+            return bin.getCanonicalFile();
+        } catch (IOException e) {
+            return bin.getAbsoluteFile();
+        }
+    }
+
+    private static void runParallel(final List items, final Task task) {
+        final int[] next = {0};
+        Thread[] threads = new Thread[Math.min(items.size(), THREADS)];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    while (true) {
+                        Object item;
+                        synchronized (next) {
+                            if (next[0] >= items.size()) return;
+                            item = items.get(next[0]++);
+                        }
+                        task.run(item);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException ignore) {
+            }
+        }
+    }
+
+    private interface Task {
+        void run(Object item);
+    }
+
+    private static class Candidate {
+        final File binary;
+        File home;
+        String version = "";
+        String runtimeVersion = "";
+        String vendor = "";
+        String osName = "";
+        String arch = "";
+        String format = "";
+
+        Candidate(File binary) {
+            this.binary = binary;
+        }
+
+        void inspect() {
+            home = binary.getParentFile().getParentFile();
+
+            //a Java 8 JDK has its release file above the jre directory
+            File release = new File(home, "release");
+            if (!release.isFile() && "jre".equals(home.getName())) release = new File(home.getParentFile(), "release");
+            try {
+                readRelease(release);
+            } catch (IOException ignore) {
+                //older than the release file
+            }
+
+            try {
+                readHeader();
+            } catch (IOException ignore) {
+                //unreadable or unknown, the release file may still have the architecture
+            }
+        }
+
+        //KEY="value" lines
+        private void readRelease(File release) throws IOException {
+            if (!release.isFile()) return;
+            BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(release), "UTF-8"));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    int i = line.indexOf('=');
+                    if (i <= 0) continue;
+                    String key = line.substring(0, i).trim();
+                    String value = line.substring(i + 1).trim();
+                    if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) value = value.substring(1, value.length() - 1);
+
+                    if ("JAVA_VERSION".equals(key)) version = value;
+                    else if ("JAVA_RUNTIME_VERSION".equals(key)) runtimeVersion = value;
+                    else if ("IMPLEMENTOR".equals(key)) vendor = value;
+                    else if ("OS_NAME".equals(key)) osName = value;
+                    else if ("OS_ARCH".equals(key)) arch = value;
+                }
+            } finally {
+                br.close();
+            }
+        }
+
+        private void readHeader() throws IOException {
+            RandomAccessFile f = new RandomAccessFile(binary, "r");
+            try {
+                byte[] b = new byte[64];
+                f.readFully(b);
+                if (b[0] == 0x7f && b[1] == 'E' && b[2] == 'L' && b[3] == 'F') {
+                    format = "elf";
+                    boolean littleEndian = b[5] == 1;
+                    int machine = littleEndian ? (b[18] & 0xff) | ((b[19] & 0xff) << 8) : ((b[18] & 0xff) << 8) | (b[19] & 0xff);
+                    String a = getElfArch(machine, littleEndian);
+                    if (a != null) arch = a;
+                } else if (b[0] == 'M' && b[1] == 'Z') {
+                    format = "pe";
+                    long peOffset = readIntLE(b, 0x3c) & 0xffffffffL;
+                    byte[] pe = new byte[6];
+                    f.seek(peOffset);
+                    f.readFully(pe);
+                    if (pe[0] != 'P' || pe[1] != 'E' || pe[2] != 0 || pe[3] != 0) throw new IOException("Not a PE file");
+                    String a = getPeArch((pe[4] & 0xff) | ((pe[5] & 0xff) << 8));
+                    if (a != null) arch = a;
+                } else {
+                    int magic = readIntLE(b, 0);
+                    if (magic == 0xfeedface || magic == 0xfeedfacf) {
+                        format = "mach-o";
+                        String a = getMachArch(readIntLE(b, 4));
+                        if (a != null) arch = a;
+                    } else if (readIntBE(b, 0) == 0xcafebabe && readIntBE(b, 4) > 0 && readIntBE(b, 4) < 32) {
+                        //a universal binary, the architectures are joined with '+'
+                        format = "mach-o";
+                        int count = readIntBE(b, 4);
+                        byte[] archs = new byte[count * 20];
+                        f.seek(8);
+                        f.readFully(archs);
+                        StringBuffer sb = new StringBuffer();
+                        for (int i = 0; i < count; i++) {
+                            String a = getMachArch(readIntBE(archs, i * 20));
+                            if (a == null) continue;
+                            if (sb.length() > 0) sb.append('+');
+                            sb.append(a);
+                        }
+                        if (sb.length() > 0) arch = sb.toString();
+                    }
+                }
+            } finally {
+                f.close();
+            }
+        }
+
+        void print(String prefix, PrintStream out) {
+            out.println(prefix + "binary=" + binary.getPath());
+            out.println(prefix + "java.home=" + home.getPath());
+            out.println(prefix + "java.version=" + version);
+            out.println(prefix + "java.runtime.version=" + runtimeVersion);
+            out.println(prefix + "java.vendor=" + vendor);
+            out.println(prefix + "os.name=" + osName);
+            out.println(prefix + "os.arch=" + arch);
+            out.println(prefix + "binary.format=" + format);
+        }
+    }
+
+    //the names Java uses for os.arch
+    private static String getElfArch(int machine, boolean littleEndian) {
+        switch (machine) {
+            case 3:
+                return "x86";
+            case 0x3e:
+                return "amd64";
+            case 0x28:
+                return "arm";
+            case 0xb7:
+                return "aarch64";
+            case 0x15:
+                return littleEndian ? "ppc64le" : "ppc64";
+            case 0x16:
+                return "s390x";
+            case 0xf3:
+                return "riscv64";
+            default:
+                return null;
+        }
+    }
+
+    private static String getPeArch(int machine) {
+        switch (machine) {
+            case 0x14c:
+                return "x86";
+            case 0x8664:
+                return "amd64";
+            case 0xaa64:
+                return "aarch64";
+            case 0x1c4:
+                return "arm";
+            default:
+                return null;
+        }
+    }
+
+    private static String getMachArch(int cpuType) {
+        switch (cpuType) {
+            case 7:
+                return "x86";
+            case 0x01000007:
+                return "x86_64";
+            case 12:
+                return "arm";
+            case 0x0100000c:
+                return "aarch64";
+            default:
+                return null;
+        }
+    }
+
+    private static int readIntLE(byte[] b, int pos) {
+        return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8) | ((b[pos + 2] & 0xff) << 16) | ((b[pos + 3] & 0xff) << 24);
+    }
+
+    private static int readIntBE(byte[] b, int pos) {
+        return ((b[pos] & 0xff) << 24) | ((b[pos + 1] & 0xff) << 16) | ((b[pos + 2] & 0xff) << 8) | (b[pos + 3] & 0xff);
+    }
+}
@@ -0,0 +1,214 @@
+package obsidiancore.launcher.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+//The properties of a JVM the launcher needs, found out in one run and kept in a cache file.
+//The cache file has the same "key=value" lines as the output of GetProperties. The binary.* keys identify the JVM:
+//binary is the name the launcher started it with, binary.path the real path of the java binary of the running JVM,
+//binary.size and binary.mtime (in seconds) its size and modification time.
+//An entry is valid as long as the binary at binary.path is unchanged, the launcher checks that itself without starting a JVM.
+//The launcher keeps the entries by the real path of binary (looked up in PATH, links resolved) and checks that it's in
+//the directory of binary.path, so a link or PATH that is changed to point to another JVM gets its own entry.
+//The JVM that reads the cache also checks that binary.path is its own binary.
+//With a modpack size the recommend.* keys are added too (see Recommendation), an entry is only valid for the same size.
+//Everything newer than Java 1.3 is called through reflection, so this works with any JVM.
+
+class Fingerprint {
+    private static final String[] PROPERTIES = {"java.version", "java.specification.version", "java.home", "java.vendor",
+            "java.vm.name", "java.vm.version", "java.vm.info", "os.name", "os.version", "os.arch"};
+
+    private Fingerprint() {
+    }
+
+    //modpack can be null
+    static void run(File cacheFile, String binary, String modpack, String[] keys, PrintStream out) {
+        List cached = read(cacheFile); //of String[] {key, value}
+        if (cached == null || !isValid(cached, binary) || !hasKeys(cached, keys) || (modpack != null && !modpack.equals(get(cached, "recommend.modpack")))) {
+            cached = collect(binary, keys);
+            if (modpack != null) Recommendation.add(cached, modpack);
+            write(cacheFile, cached);
+        }
+
+        for (int i = 0; i < cached.size(); i++) {
+            String[] entry = (String[]) cached.get(i);
+            out.println(entry[0] + "=" + entry[1]);
+        }
+    }
+
+    private static List collect(String binary, String[] keys) {
+        List result = new ArrayList();
+        add(result, "binary", binary);
+        File bin = getBinary();
+        if (bin != null) {
+            add(result, "binary.path", bin.getPath());
+            add(result, "binary.size", String.valueOf(bin.length()));
+            add(result, "binary.mtime", String.valueOf(bin.lastModified() / 1000));
+        }
+
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            add(result, PROPERTIES[i], System.getProperty(PROPERTIES[i]));
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        add(result, "fingerprint.processors", invoke(Runtime.class, "availableProcessors", runtime));
+        add(result, "fingerprint.maxHeap", invoke(Runtime.class, "maxMemory", runtime));
+        add(result, "fingerprint.physicalMemory", getPhysicalMemory());
+        add(result, "fingerprint.jit", getCompiler());
+        //"sharing" is in the VM info when the JVM runs with class data sharing
+        String info = System.getProperty("java.vm.info");
+        add(result, "fingerprint.cds", String.valueOf(info != null && info.indexOf("sharing") >= 0));
+
+        for (int i = 0; i < keys.length; i++) {
+            if (get(result, keys[i]) == null) add(result, keys[i], System.getProperty(keys[i]));
+        }
+        return result;
+    }
+
+    //the java binary in java.home, on Windows the launcher may have started javaw.exe but that's in the same directory
+    static File getBinary() {
+        File dir = new File(System.getProperty("java.home"), "bin");
+        File bin = new File(dir, "java.exe");
+        if (!bin.isFile()) bin = new File(dir, "java");
+        if (!bin.isFile()) return null;
+        try {
+            return bin.getCanonicalFile();
+        } catch (IOException e) {
+            return bin.getAbsoluteFile();
+        }
+    }
+
+    private static String getPhysicalMemory() {
+        try {
+            Object os = invokeStatic("java.lang.management.ManagementFactory", "getOperatingSystemMXBean");
+            //through the interface, the class of the object isn't public
+            return invoke(Class.forName("com.sun.management.OperatingSystemMXBean"), "getTotalPhysicalMemorySize", os);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static String getCompiler() {
+        try {
+            Object compilation = invokeStatic("java.lang.management.ManagementFactory", "getCompilationMXBean");
+            if (compilation == null) return ""; //interpreter only
+            return invoke(Class.forName("java.lang.management.CompilationMXBean"), "getName", compilation);
+        } catch (Exception e) {
+            String compiler = System.getProperty("java.compiler"); //before Java 5
+            return compiler != null ? compiler : "";
+        }
+    }
+
+    private static Object invokeStatic(String className, String methodName) throws Exception {
+        Method m = Class.forName(className).getMethod(methodName, new Class[0]);
+        return m.invoke(null, new Object[0]);
+    }
+
+    //the result as a string or "" if the method doesn't exist in this Java
+    private static String invoke(Class clazz, String methodName, Object obj) {
+        try {
+            Method m = clazz.getMethod(methodName, new Class[0]);
+            Object result = m.invoke(obj, new Object[0]);
+            return result != null ? result.toString() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static boolean isValid(List cached, String binary) {
+        if (!binary.equals(get(cached, "binary"))) return false;
+        String path = get(cached, "binary.path");
+        if (path == null) return false;
+        File bin = new File(path);
+        if (!bin.equals(getBinary())) return false;
+        return bin.isFile() && String.valueOf(bin.length()).equals(get(cached, "binary.size"))
+                && String.valueOf(bin.lastModified() / 1000).equals(get(cached, "binary.mtime"));
+    }
+
+    private static boolean hasKeys(List cached, String[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            if (get(cached, keys[i]) == null) return false;
+        }
+        return true;
+    }
+
+    static void add(List list, String key, String value) {
+        list.add(new String[]{key, value != null ? value : ""});
+    }
+
+    static String get(List list, String key) {
+        for (int i = 0; i < list.size(); i++) {
+            String[] entry = (String[]) list.get(i);
+            if (entry[0].equals(key)) return entry[1];
+        }
+        return null;
+    }
+
+    //returns null if the file doesn't exist or can't be read
+    private static List read(File file) {
+        if (!file.isFile()) return null;
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            List result = new ArrayList();
+            String line;
+            while ((line = br.readLine()) != null) {
+                int i = line.indexOf('=');
+                if (i > 0) add(result, line.substring(0, i), line.substring(i + 1));
+            }
+            return result;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (br != null) {
+                try {
+                    br.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    //the cache is only an optimization, if it can't be written the JVM is started again next time
+    private static void write(File file, List entries) {
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer w = null;
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.isDirectory()) dir.mkdirs();
+
+            w = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            PrintWriter pw = new PrintWriter(w);
+            for (int i = 0; i < entries.size(); i++) {
+                String[] entry = (String[]) entries.get(i);
+                pw.print(entry[0] + "=" + entry[1] + "\n");
+            }
+            pw.flush();
+            w.close();
+            w = null;
+
+            file.delete(); //renameTo doesn't replace files on Windows
+            if (!tmp.renameTo(file)) tmp.delete();
+        } catch (IOException e) {
+            tmp.delete();
+        } finally {
+            if (w != null) {
+                try {
+                    w.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+}
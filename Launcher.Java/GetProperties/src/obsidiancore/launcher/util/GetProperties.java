@@ -1,13 +1,44 @@
 package obsidiancore.launcher.util;
 
+import java.io.File;
+import java.io.PrintStream;
+
 //Reads the System.Properties specified via args and outputs them in a way that is simple to parse with regex.
+//With "--cache <cache file> <java binary> [--modpack <size>] [keys]" it outputs the fingerprint of the JVM (see Fingerprint),
+//the recommended JVM flags for the modpack size (see Recommendation) and the keys, and keeps them in the cache file,
+//which is output as it is while it's valid for the binary and has all the keys.
+//With "--discover [dirs]" it lists the Java installations it finds without starting them (see Discovery).
+//The helper daemon (obsidiancore.launcher.helper.Helper) calls run() for its "properties" requests.
 
 public class GetProperties {
     public static void main(String[] args) {
+        run(args, System.out);
+    }
+
+    public static void run(String[] args, PrintStream out) {
+        if (args.length >= 3 && "--cache".equals(args[0])) {
+            int first = 3;
+            String modpack = null;
+            if (args.length >= 5 && "--modpack".equals(args[3]) && Recommendation.isModpackSize(args[4])) {
+                modpack = args[4];
+                first = 5;
+            }
+            String[] keys = new String[args.length - first];
+            System.arraycopy(args, first, keys, 0, keys.length);
+            Fingerprint.run(new File(args[1]), args[2], modpack, keys, out);
+            return;
+        }
+        if (args.length >= 1 && "--discover".equals(args[0])) {
+            String[] roots = new String[args.length - 1];
+            System.arraycopy(args, 1, roots, 0, roots.length);
+            Discovery.run(roots, out);
+            return;
+        }
+
         for (int i = 0; i < args.length; i++) {
             String val = System.getProperty(args[i]);
             if (val == null) val = "";
-            System.out.println(args[i] + "=" + val);
+            out.println(args[i] + "=" + val);
         }
     }
 }
\ No newline at end of file
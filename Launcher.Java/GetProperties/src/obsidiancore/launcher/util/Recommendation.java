@@ -0,0 +1,163 @@
+package obsidiancore.launcher.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+//The heap size, the garbage collector and the flags that go with them for running the game on this JVM and machine.
+//The modpack size is a hint from the launcher: vanilla, small, medium or large (see Java.cs).
+//The heap grows with the modpack but stays below half of the physical memory, since the game also needs native memory
+//and a heap bigger than what the modpack needs only makes the collections longer.
+//The collector is ZGC on Java 21 and newer (generational, pauses don't depend on the heap size), Shenandoah on Java 15 and newer
+//if this build has it, otherwise G1. One core gets the serial collector and Java before 7 the parallel one.
+//Every HotSpot knows the flags of all the collectors, a build without the collector only refuses to start with them,
+//so a JVM is started once with the flags to find out. If that can't be done it's G1.
+//The GC threads leave a core for the game's own threads.
+//The keys are recommend.modpack, recommend.heap (in MB), recommend.gc, recommend.parallelGCThreads, recommend.concGCThreads,
+//recommend.stringDeduplication and recommend.flags (all of it as JVM arguments).
+
+class Recommendation {
+    static final String[] MODPACK_SIZES = {"vanilla", "small", "medium", "large"};
+    private static final int[] MODPACK_HEAP = {2048, 3072, 4096, 6144}; //in MB
+
+    private Recommendation() {
+    }
+
+    static boolean isModpackSize(String size) {
+        return indexOf(size) >= 0;
+    }
+
+    //adds the recommend.* keys to the fingerprint
+    static void add(List fingerprint, String modpack) {
+        int javaMajor = getJavaMajor(System.getProperty("java.specification.version"));
+        int cores = parseInt(Fingerprint.get(fingerprint, "fingerprint.processors"), 1);
+        long physicalMb = parseLong(Fingerprint.get(fingerprint, "fingerprint.physicalMemory"), 0) / (1024 * 1024);
+        if (physicalMb <= 0) {
+            //the default maximum heap is a quarter of the physical memory
+            physicalMb = parseLong(Fingerprint.get(fingerprint, "fingerprint.maxHeap"), 0) / (1024 * 1024) * 4;
+        }
+        if (physicalMb <= 0) physicalMb = 4096;
+        boolean is64Bit = "64".equals(System.getProperty("sun.arch.data.model")) || System.getProperty("os.arch").indexOf("64") >= 0;
+
+        long heap = MODPACK_HEAP[Math.max(0, indexOf(modpack))];
+        heap = Math.min(heap, physicalMb / 2 / 512 * 512);
+        if (!is64Bit) heap = Math.min(heap, 1024);
+        heap = Math.max(heap, 1024);
+
+        String gc;
+        if (cores <= 1) gc = "Serial";
+        else if (javaMajor < 7) gc = "Parallel";
+        else if (javaMajor >= 21 && heap >= 4096 && startsWith(javaMajor < 23 ? new String[]{"-XX:+UseZGC", "-XX:+ZGenerational"} : new String[]{"-XX:+UseZGC"})) gc = "ZGC";
+        else if (javaMajor >= 15 && heap >= 4096 && startsWith(new String[]{"-XX:+UseShenandoahGC"})) gc = "Shenandoah";
+        else gc = "G1";
+
+        //the JVM's default is all the cores up to 8 and 5/8 of the rest, one is left for the game
+        int parallelThreads = cores <= 8 ? cores : 8 + (cores - 8) * 5 / 8;
+        if (cores > 2) parallelThreads = Math.min(parallelThreads, cores - 1);
+        int concThreads = Math.max(1, (parallelThreads + 2) / 4);
+
+        //G1 has it since 8u20 and Shenandoah since the start, every collector since Java 18
+        boolean dedup = javaMajor >= 18 || "Shenandoah".equals(gc) || ("G1".equals(gc) && (javaMajor > 8 || getUpdate(System.getProperty("java.version")) >= 20));
+
+        StringBuffer flags = new StringBuffer();
+        flags.append("-Xmx").append(heap).append("M -Xms").append(heap / 2).append('M');
+        if ("Serial".equals(gc)) {
+            flags.append(" -XX:+UseSerialGC");
+        } else if ("Parallel".equals(gc)) {
+            flags.append(" -XX:+UseParallelGC");
+        } else if ("ZGC".equals(gc)) {
+            flags.append(" -XX:+UseZGC");
+            if (javaMajor < 23) flags.append(" -XX:+ZGenerational"); //the default from 23 on
+        } else if ("Shenandoah".equals(gc)) {
+            flags.append(" -XX:+UseShenandoahGC");
+        } else {
+            //the chunk data is big, with larger regions less of it is allocated as humongous objects
+            flags.append(" -XX:+UseG1GC -XX:+UnlockExperimentalVMOptions -XX:G1NewSizePercent=20 -XX:G1ReservePercent=20 -XX:MaxGCPauseMillis=50");
+            flags.append(" -XX:G1HeapRegionSize=").append(heap >= 12288 ? 16 : 8).append('M');
+        }
+        if (!"Serial".equals(gc)) flags.append(" -XX:ParallelGCThreads=").append(parallelThreads);
+        if (!"Serial".equals(gc) && !"Parallel".equals(gc)) flags.append(" -XX:ConcGCThreads=").append(concThreads);
+        if (dedup) flags.append(" -XX:+UseStringDeduplication");
+
+        Fingerprint.add(fingerprint, "recommend.modpack", modpack);
+        Fingerprint.add(fingerprint, "recommend.heap", String.valueOf(heap));
+        Fingerprint.add(fingerprint, "recommend.gc", gc);
+        Fingerprint.add(fingerprint, "recommend.parallelGCThreads", String.valueOf(parallelThreads));
+        Fingerprint.add(fingerprint, "recommend.concGCThreads", String.valueOf(concThreads));
+        Fingerprint.add(fingerprint, "recommend.stringDeduplication", String.valueOf(dedup));
+        Fingerprint.add(fingerprint, "recommend.flags", flags.toString());
+    }
+
+    //true if this Java starts with the options
+    private static boolean startsWith(String[] options) {
+        File bin = Fingerprint.getBinary();
+        if (bin == null) return false;
+        String[] cmd = new String[options.length + 2];
+        cmd[0] = bin.getPath();
+        System.arraycopy(options, 0, cmd, 1, options.length);
+        cmd[cmd.length - 1] = "-version";
+        try {
+            Process proc = Runtime.getRuntime().exec(cmd);
+            proc.getOutputStream().close();
+            //"-version" prints a few lines to stderr, they have to be read or the process could block
+            drain(proc.getInputStream());
+            drain(proc.getErrorStream());
+            return proc.waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void drain(InputStream is) throws IOException {
+        byte[] buf = new byte[4096];
+        try {
+            while (is.read(buf) >= 0) {
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static int indexOf(String modpack) {
+        for (int i = 0; i < MODPACK_SIZES.length; i++) {
+            if (MODPACK_SIZES[i].equals(modpack)) return i;
+        }
+        return -1;
+    }
+
+    //"1.8" is 8, "17" is 17
+    private static int getJavaMajor(String specVersion) {
+        if (specVersion == null) return 0;
+        if (specVersion.startsWith("1.")) specVersion = specVersion.substring(2);
+        int i = 0;
+        while (i < specVersion.length() && Character.isDigit(specVersion.charAt(i))) i++;
+        return parseInt(specVersion.substring(0, i), 0);
+    }
+
+    //the update of a version like "1.8.0_392", 0 if it has none
+    private static int getUpdate(String version) {
+        if (version == null) return 0;
+        int i = version.indexOf('_');
+        if (i < 0) return 0;
+        int j = i + 1;
+        while (j < version.length() && Character.isDigit(version.charAt(j))) j++;
+        return parseInt(version.substring(i + 1, j), 0);
+    }
+
+    private static int parseInt(String s, int def) {
+        try {
+            return Integer.parseInt(s);
+        } catch (Exception e) {
+            return def;
+        }
+    }
+
+    private static long parseLong(String s, long def) {
+        try {
+            return Long.parseLong(s);
+        } catch (Exception e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package obsidiancore.launcher.helper;
+
+import obsidiancore.launcher.bcp.Patcher;
+import obsidiancore.launcher.util.GetProperties;
+import obsidiancore.launcher.verify.Verifier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Usage: Helper
+// One JVM that answers the requests of the launcher for as long as it runs, instead of a new JVM for every tool.
+// A request is a header line "<id> <command> <argument count> <input length>", the arguments one per line
+// and then <input length> bytes, which the tool reads where it would read stdin ("-").
+// The commands take the same arguments as the main method of their tool:
+//   properties  GetProperties (of the JVM the helper runs on)
+//   patch       obsidiancore.launcher.bcp.Patcher
+//   verify      obsidiancore.launcher.verify.Verifier
+//   ping        answers with an empty output
+//   shutdown    waits for the running requests, answers and exits, the same happens at the end of stdin
+// The answer is a header line "<id> <exit code> <output length>" and then the output of the tool.
+// Everything is UTF-8 with "\n" line ends. The id is chosen by the launcher and can be anything without a space.
+// The requests run in parallel on a pool, so the answers come in the order they are done. Requests that change
+// the same jars have to wait for each other's answer. Exit code 2 means the request couldn't be run, the output says why.
+// Anything else that's printed to stdout goes to stderr, so it can't break the answers.
+
+public class Helper {
+    public static final int ERROR = 2;
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+
+    private Helper(OutputStream out, int threads) {
+        this.out = out;
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        OutputStream out = new BufferedOutputStream(System.out);
+        System.setOut(System.err);
+
+        Helper helper = new Helper(out, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        helper.serve(new BufferedInputStream(System.in));
+        System.exit(0);
+    }
+
+    private void serve(InputStream in) throws IOException, InterruptedException {
+        try {
+            while (true) {
+                String header = readLine(in);
+                if (header == null) break;
+                if (header.trim().isEmpty()) continue;
+
+                String[] parts = header.trim().split(" ");
+                final String id = parts[0];
+                if (parts.length != 4) {
+                    answer(id, ERROR, "Invalid request: " + header);
+                    continue;
+                }
+                final String command = parts[1];
+                final String[] args = new String[Integer.parseInt(parts[2])];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = readLine(in);
+                    if (args[i] == null) throw new EOFException("The request " + id + " ends in its arguments");
+                }
+                final byte[] input = new byte[Integer.parseInt(parts[3])];
+                readFully(in, input);
+
+                if ("shutdown".equals(command)) {
+                    shutdown();
+                    answer(id, 0, "");
+                    return;
+                }
+                pool.execute(new Runnable() {
+                    public void run() {
+                        handle(id, command, args, input);
+                    }
+                });
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid request header: " + e.getMessage());
+        } catch (EOFException e) {
+            System.err.println(e.getMessage());
+        }
+        shutdown();
+    }
+
+    private void shutdown() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    private void handle(String id, String command, String[] args, byte[] input) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int exitCode;
+        try {
+            PrintStream ps = new PrintStream(buffer, false, "UTF-8");
+            InputStream is = new ByteArrayInputStream(input);
+            switch (command) {
+                case "properties":
+                    GetProperties.run(args, ps);
+                    exitCode = 0;
+                    break;
+                case "patch":
+                    exitCode = Patcher.run(args, is, ps);
+                    break;
+                case "verify":
+                    exitCode = Verifier.run(args, is, ps);
+                    break;
+                case "ping":
+                    exitCode = 0;
+                    break;
+                default:
+                    ps.print("Unknown command: " + command);
+                    exitCode = ERROR;
+            }
+            ps.flush();
+        } catch (Exception | LinkageError e) {
+            buffer.reset();
+            byte[] message = (e.getMessage() != null ? e.getClass().getSimpleName() + ": " + e.getMessage() : e.getClass().getSimpleName()).getBytes(StandardCharsets.UTF_8);
+            buffer.write(message, 0, message.length);
+            exitCode = ERROR;
+        }
+        answer(id, exitCode, buffer.toByteArray());
+    }
+
+    private void answer(String id, int exitCode, String output) {
+        answer(id, exitCode, output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void answer(String id, int exitCode, byte[] output) {
+        synchronized (out) {
+            try {
+                out.write((id + " " + exitCode + " " + output.length + "\n").getBytes(StandardCharsets.UTF_8));
+                out.write(output);
+                out.flush();
+            } catch (IOException e) {
+                //the launcher is gone, the requests are finished anyway
+                System.err.println("Couldn't answer " + id + ": " + e.getMessage());
+            }
+        }
+    }
+
+    //a UTF-8 line without the line end, null at the end of the stream
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0) return null;
+                break;
+            }
+            line.write(b);
+        }
+        String s = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    private static void readFully(InputStream in, byte[] b) throws IOException {
+        int pos = 0;
+        while (pos < b.length) {
+            int n = in.read(b, pos, b.length - pos);
+            if (n < 0) throw new EOFException("The input of a request ends early");
+            pos += n;
+        }
+    }
+}
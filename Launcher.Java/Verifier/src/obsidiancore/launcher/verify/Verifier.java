@@ -0,0 +1,260 @@
+package obsidiancore.launcher.verify;
+
+import obsidiancore.launcher.bcp.PatchCache;
+import obsidiancore.launcher.bcp.ReverseDelta;
+import obsidiancore.launcher.bcp.ZipDirectory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Usage: Verifier <list file or - for stdin>
+// Checks that library jars are intact, before and after they are patched.
+// The list is UTF-8 text with one "<sha1> <jar>" line per jar (what sha1sum prints), "-" instead of the hash skips the hash check.
+// Empty lines and lines starting with # are ignored.
+// For every jar a line "<jar>=<result>" is printed in the order of the list, the result is one of
+//   ok, missing, hash-mismatch <sha1 of the file>, corrupt <reason> or failed <reason> (the file couldn't be read).
+// A patched jar also matches the hash of the original that its ReverseDelta records,
+// so it gets the same result as before it was patched.
+// The zip structure is always checked: the end record, the central directory and the local header of every entry.
+// The CRCs are checked for the entries the patcher wrote, or for all the entries when there is no hash to check.
+// The files are memory mapped and checked in parallel, one thread per core.
+// A mapping is only released by the garbage collector (and on Windows the file can't be replaced until then),
+// so this is meant to run in its own process (or in the helper daemon, obsidiancore.launcher.helper.Helper, which calls run()).
+
+public class Verifier {
+    public static final String OK = "ok";
+    public static final String MISSING = "missing";
+    public static final String HASH_MISMATCH = "hash-mismatch";
+    public static final String CORRUPT = "corrupt";
+    public static final String FAILED = "failed";
+
+    private Verifier() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args, System.in, System.out));
+    }
+
+    //returns the exit code, in is read if the list is "-"
+    public static int run(String[] args, InputStream in, PrintStream out) throws IOException {
+        if (args.length != 1) return 1;
+
+        List<Check> checks;
+        if ("-".equals(args[0])) {
+            checks = readList(in);
+        } else {
+            try (InputStream is = new FileInputStream(args[0])) {
+                checks = readList(is);
+            }
+        }
+        return run(checks, out) ? 0 : 1;
+    }
+
+    public static List<Check> readList(InputStream is) throws IOException {
+        List<Check> checks = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            //the jar path can contain spaces, the hash can't, sha1sum marks binary files with a '*' before the path
+            int sep = 0;
+            while (sep < line.length() && !Character.isWhitespace(line.charAt(sep))) sep++;
+            String sha1 = line.substring(0, sep);
+            String jar = line.substring(sep).trim();
+            if (jar.startsWith("*")) jar = jar.substring(1);
+            checks.add(new Check("-".equals(sha1) ? null : sha1, jar));
+        }
+        return checks;
+    }
+
+    //returns true if every jar is ok
+    public static boolean run(List<Check> checks, PrintStream out) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(checks.size(), Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final Check check : checks) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    public Void call() {
+                        check.result = verify(new File(check.jar), check.sha1);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (InterruptedException | ExecutionException ignore) {
+                    //a check without a result is reported as failed
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        boolean ok = true;
+        for (Check check : checks) {
+            if (check.result == null) check.result = FAILED + " Not run";
+            if (!OK.equals(check.result)) ok = false;
+            out.println(check);
+        }
+        out.flush();
+        return ok;
+    }
+
+    //the result for one jar, expectedSha1 can be null
+    public static String verify(File jar, String expectedSha1) {
+        if (!jar.isFile()) return MISSING;
+
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) return CORRUPT + " Too large for a library";
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            //the SHA-256 is only needed to find out if the delta belongs to the jar
+            boolean hasDelta = ReverseDelta.getFile(jar).isFile();
+            String[] hashes = hasDelta ? digest(map, "SHA-1", "SHA-256") : digest(map, "SHA-1");
+            ReverseDelta delta = hasDelta ? ReverseDelta.readFor(jar, hashes[1]) : null;
+
+            if (expectedSha1 != null && !hashes[0].equalsIgnoreCase(expectedSha1)
+                    && (delta == null || !delta.getOriginalSha1().equalsIgnoreCase(expectedSha1))) {
+                return HASH_MISMATCH + " " + hashes[0];
+            }
+
+            ZipDirectory directory = ZipDirectory.read(channel);
+            Set<Long> unchanged = delta != null ? delta.getCopiedOffsets() : null;
+            checkStructure(map, directory, expectedSha1 == null, unchanged);
+            return OK;
+        } catch (ZipException e) {
+            return CORRUPT + " " + e.getMessage();
+        } catch (IOException e) {
+            return FAILED + " " + e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+        }
+    }
+
+    //unchanged are the offsets of the records the patcher didn't write or null if the jar isn't patched
+    private static void checkStructure(ByteBuffer map, ZipDirectory directory, boolean allCrcs, Set<Long> unchanged) throws ZipException {
+        byte[] end = directory.getEnd();
+        int count = (end[10] & 0xff) | ((end[11] & 0xff) << 8);
+        if (count != directory.getEntries().size()) throw new ZipException("The end record counts " + count + " entries, the central directory has " + directory.getEntries().size());
+
+        long dataEnd = directory.getCentralDirectoryOffset();
+        for (ZipDirectory.Entry e : directory.getEntries()) {
+            long offset = e.getLocalHeaderOffset();
+            if (offset + 30 > dataEnd || map.getInt((int) offset) != 0x04034b50) throw new ZipException("Invalid local header for " + e.getName());
+            long dataOffset = offset + 30 + (map.getShort((int) offset + 26) & 0xffff) + (map.getShort((int) offset + 28) & 0xffff);
+            if (dataOffset + e.getCompressedSize() > dataEnd) throw new ZipException("Truncated entry " + e.getName());
+
+            if (allCrcs || (unchanged != null && !unchanged.contains(offset))) checkCrc(map, e, (int) dataOffset);
+        }
+    }
+
+    private static void checkCrc(ByteBuffer map, ZipDirectory.Entry e, int dataOffset) throws ZipException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        byte[] buf = new byte[65536];
+
+        if (e.getMethod() == 0) {
+            ByteBuffer data = slice(map, dataOffset, (int) e.getCompressedSize());
+            while (data.hasRemaining()) {
+                int n = Math.min(buf.length, data.remaining());
+                data.get(buf, 0, n);
+                crc.update(buf, 0, n);
+                size += n;
+            }
+        } else if (e.getMethod() == 8) {
+            byte[] input = new byte[(int) e.getCompressedSize()];
+            slice(map, dataOffset, input.length).get(input);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(input);
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buf);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    crc.update(buf, 0, n);
+                    size += n;
+                }
+            } catch (DataFormatException ex) {
+                throw new ZipException("Invalid compressed data for " + e.getName() + ": " + ex.getMessage());
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new ZipException("Unsupported compression method " + e.getMethod() + " for " + e.getName());
+        }
+
+        if (size != e.getSize() || crc.getValue() != e.getCrc()) throw new ZipException("CRC mismatch for " + e.getName());
+    }
+
+    private static ByteBuffer slice(ByteBuffer map, int offset, int length) {
+        ByteBuffer b = map.duplicate();
+        b.position(offset);
+        b.limit(offset + length);
+        return b;
+    }
+
+    private static String[] digest(ByteBuffer map, String... algorithms) {
+        String[] hex = new String[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance(algorithms[i]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e); //every Java has SHA-1 and SHA-256
+            }
+            md.update(map.duplicate());
+            hex[i] = PatchCache.toHex(md.digest());
+        }
+        return hex;
+    }
+
+    public static class Check {
+        final String sha1;
+        final String jar;
+        String result;
+
+        public Check(String sha1, String jar) {
+            this.sha1 = sha1;
+            this.jar = jar;
+        }
+
+        public String getJar() {
+            return jar;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return jar + "=" + result;
+        }
+    }
+}